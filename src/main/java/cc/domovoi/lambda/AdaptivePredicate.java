@@ -0,0 +1,180 @@
+package cc.domovoi.lambda;
+
+import java.util.Arrays;
+import java.util.Comparator;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.function.LongSupplier;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+/**
+ * A conjunction or disjunction of predicates which reorders its operands at runtime,
+ * produced by `EJLambda.adaptiveAnd` and `EJLambda.adaptiveOr`.
+ * <p>
+ * One call out of `sampleInterval` evaluates every operand, measuring its cost and how often it decides
+ * the result (`false` for a conjunction, `true` for a disjunction). Every `reorderInterval` samples the
+ * operands are sorted by cost divided by decision rate, which minimizes the expected cost per element.
+ * Once the order has not changed for `stableRounds` reorderings, sampling stops and the order is frozen.
+ * <p>
+ * The operands must be independent and total: sampled calls evaluate every operand without short-circuiting,
+ * and reordering may move any operand ahead of any other, so an operand must neither rely on another one
+ * having passed, as `s -> s.length() > 3` relies on `Objects::nonNull`, nor throw or have side effects on any
+ * input. A guard and the predicates it protects should be combined into a single operand, such as
+ * `s -> s != null && s.length() > 3`, which keeps their order.
+ *
+ * @param <T> the type of the input to the predicate.
+ */
+public class AdaptivePredicate<T> implements Predicate<T> {
+
+    public static final int DEFAULT_SAMPLE_INTERVAL = 64;
+
+    public static final int DEFAULT_REORDER_INTERVAL = 32;
+
+    public static final int DEFAULT_STABLE_ROUNDS = 8;
+
+    private final Predicate<? super T>[] predicates;
+
+    private final boolean conjunction;
+
+    private final int sampleInterval;
+
+    private final int reorderInterval;
+
+    private final int stableRounds;
+
+    private final LongSupplier clock;
+
+    private final AtomicLongArray costs;
+
+    private final AtomicLongArray decisions;
+
+    private final AtomicLong samples = new AtomicLong();
+
+    private volatile int[] order;
+
+    private volatile boolean frozen;
+
+    private int unchangedRounds;
+
+    /**
+     * @param predicates      the operands, in their initial order.
+     * @param conjunction     `true` for a conjunction, `false` for a disjunction.
+     * @param sampleInterval  one call out of `sampleInterval` is sampled.
+     * @param reorderInterval the number of samples between reorderings.
+     * @param stableRounds    the number of reorderings without change after which the order is frozen,
+     *                        or 0 to never freeze.
+     */
+    public AdaptivePredicate(Predicate<? super T>[] predicates, boolean conjunction, int sampleInterval, int reorderInterval, int stableRounds) {
+        this(predicates, conjunction, sampleInterval, reorderInterval, stableRounds, System::nanoTime);
+    }
+
+    /**
+     * @param predicates      the operands, in their initial order.
+     * @param conjunction     `true` for a conjunction, `false` for a disjunction.
+     * @param sampleInterval  one call out of `sampleInterval` is sampled.
+     * @param reorderInterval the number of samples between reorderings.
+     * @param stableRounds    the number of reorderings without change after which the order is frozen,
+     *                        or 0 to never freeze.
+     * @param clock           the time source the costs of the operands are measured with, in any unit.
+     */
+    public AdaptivePredicate(Predicate<? super T>[] predicates, boolean conjunction, int sampleInterval, int reorderInterval, int stableRounds, LongSupplier clock) {
+        if (sampleInterval < 1 || reorderInterval < 1) {
+            throw new IllegalArgumentException("sampleInterval and reorderInterval must be positive");
+        }
+        this.predicates = predicates.clone();
+        this.conjunction = conjunction;
+        this.sampleInterval = sampleInterval;
+        this.reorderInterval = reorderInterval;
+        this.stableRounds = stableRounds;
+        this.clock = clock;
+        this.costs = new AtomicLongArray(predicates.length);
+        this.decisions = new AtomicLongArray(predicates.length);
+        this.order = IntStream.range(0, predicates.length).toArray();
+    }
+
+    @Override
+    public boolean test(T t) {
+        if (!frozen && ThreadLocalRandom.current().nextInt(sampleInterval) == 0) {
+            return sample(t);
+        }
+        int[] order = this.order;
+        for (int i : order) {
+            if (predicates[i].test(t) != conjunction) {
+                return !conjunction;
+            }
+        }
+        return conjunction;
+    }
+
+    /**
+     * @return the current evaluation order, as indices of the operands.
+     */
+    public int[] order() {
+        return order.clone();
+    }
+
+    public boolean isFrozen() {
+        return frozen;
+    }
+
+    /**
+     * Stops sampling, keeping the current order.
+     */
+    public void freeze() {
+        frozen = true;
+    }
+
+    /**
+     * Resumes sampling, for instance after the data distribution has changed.
+     */
+    public synchronized void unfreeze() {
+        for (int i = 0; i < predicates.length; i++) {
+            costs.set(i, 0L);
+            decisions.set(i, 0L);
+        }
+        unchangedRounds = 0;
+        frozen = false;
+    }
+
+    private boolean sample(T t) {
+        boolean result = conjunction;
+        for (int i = 0; i < predicates.length; i++) {
+            long start = clock.getAsLong();
+            boolean r = predicates[i].test(t);
+            costs.addAndGet(i, clock.getAsLong() - start);
+            if (r != conjunction) {
+                decisions.incrementAndGet(i);
+                result = !conjunction;
+            }
+        }
+        if (samples.incrementAndGet() % reorderInterval == 0) {
+            reorder();
+        }
+        return result;
+    }
+
+    private synchronized void reorder() {
+        if (frozen) {
+            return;
+        }
+        double[] ranks = new double[predicates.length];
+        for (int i = 0; i < predicates.length; i++) {
+            // expected cost of an operand per element it settles
+            ranks[i] = (costs.get(i) + 1.0) / (decisions.get(i) + 1.0);
+        }
+        int[] next = IntStream.range(0, predicates.length).boxed()
+                .sorted(Comparator.comparingDouble(i -> ranks[i]))
+                .mapToInt(Integer::intValue)
+                .toArray();
+        if (Arrays.equals(next, order)) {
+            if (stableRounds > 0 && ++unchangedRounds >= stableRounds) {
+                frozen = true;
+            }
+        } else {
+            unchangedRounds = 0;
+            order = next;
+        }
+    }
+}
@@ -0,0 +1,222 @@
+package cc.domovoi.lambda;
+
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
+
+/**
+ * Count, sum, min, max, mean and variance of several numeric fields over a group,
+ * produced by `EJCollector.groupingByAggregates` and `EJCollector.groupingByLongAggregates`.
+ * <p>
+ * The statistics are accumulated in a few primitive arrays per group. The count is a `long`, and so are
+ * the sum, minimum and maximum of integral fields, which stay exact beyond 2^53 through `longSum`, `longMin`
+ * and `longMax`; only the mean and the sum of squared deviations of each field are `double`. They are
+ * updated with Welford's method, and partial results are merged with Chan's formula, which keeps the
+ * results of parallel streams numerically stable, though not bit for bit equal to sequential ones.
+ */
+public final class AggregateSummary {
+
+    private static final int STRIDE = 3;
+
+    private final boolean integral;
+
+    private long count;
+
+    /**
+     * The sum, minimum and maximum of each field, in `longs` for integral fields and in `doubles` otherwise.
+     */
+    private final long[] longs;
+
+    private final double[] doubles;
+
+    /**
+     * The mean and sum of squared deviations of each field.
+     */
+    private final double[] moments;
+
+    AggregateSummary(int fields, boolean integral) {
+        this.integral = integral;
+        this.longs = new long[integral ? fields * STRIDE : 0];
+        this.doubles = new double[integral ? 0 : fields * STRIDE];
+        this.moments = new double[fields * 2];
+        for (int i = 0; i < longs.length; i += STRIDE) {
+            longs[i + 1] = Long.MAX_VALUE;
+            longs[i + 2] = Long.MIN_VALUE;
+        }
+        for (int i = 0; i < doubles.length; i += STRIDE) {
+            doubles[i + 1] = Double.POSITIVE_INFINITY;
+            doubles[i + 2] = Double.NEGATIVE_INFINITY;
+        }
+    }
+
+    /**
+     * @return the number of elements of the group.
+     */
+    public long count() {
+        return count;
+    }
+
+    /**
+     * @return the number of fields.
+     */
+    public int fieldCount() {
+        return moments.length / 2;
+    }
+
+    /**
+     * @return `true` if the fields are integral, so that `longSum`, `longMin` and `longMax` are available.
+     */
+    public boolean isIntegral() {
+        return integral;
+    }
+
+    public double sum(int field) {
+        return integral ? longs[offset(field)] : doubles[offset(field)];
+    }
+
+    /**
+     * @param field the index of the field.
+     * @return the exact sum of the field.
+     * @throws IllegalStateException if the fields are not integral.
+     */
+    public long longSum(int field) {
+        return longs[integralOffset(field)];
+    }
+
+    /**
+     * @param field the index of the field.
+     * @return the exact minimum of the field, `Long.MAX_VALUE` if the group is empty.
+     * @throws IllegalStateException if the fields are not integral.
+     */
+    public long longMin(int field) {
+        return longs[integralOffset(field) + 1];
+    }
+
+    /**
+     * @param field the index of the field.
+     * @return the exact maximum of the field, `Long.MIN_VALUE` if the group is empty.
+     * @throws IllegalStateException if the fields are not integral.
+     */
+    public long longMax(int field) {
+        return longs[integralOffset(field) + 2];
+    }
+
+    public double min(int field) {
+        return integral ? longs[offset(field) + 1] : doubles[offset(field) + 1];
+    }
+
+    public double max(int field) {
+        return integral ? longs[offset(field) + 2] : doubles[offset(field) + 2];
+    }
+
+    public double mean(int field) {
+        return moments[moment(field)];
+    }
+
+    /**
+     * @param field the index of the field.
+     * @return the population variance of the field.
+     */
+    public double variance(int field) {
+        return count == 0 ? 0.0 : moments[moment(field) + 1] / count;
+    }
+
+    /**
+     * @param field the index of the field.
+     * @return the sample variance of the field.
+     */
+    public double sampleVariance(int field) {
+        return count < 2 ? 0.0 : moments[moment(field) + 1] / (count - 1);
+    }
+
+    public double standardDeviation(int field) {
+        return Math.sqrt(variance(field));
+    }
+
+    private int offset(int field) {
+        return moment(field) / 2 * STRIDE;
+    }
+
+    private int integralOffset(int field) {
+        if (!integral) {
+            throw new IllegalStateException("The fields are not integral");
+        }
+        return offset(field);
+    }
+
+    private int moment(int field) {
+        if (field < 0 || field >= fieldCount()) {
+            throw new IndexOutOfBoundsException("field " + field);
+        }
+        return field * 2;
+    }
+
+    <T> void accumulate(T t, ToDoubleFunction<? super T>[] fields) {
+        long n = ++count;
+        for (int f = 0, i = 0; f < fields.length; f++, i += STRIDE) {
+            double x = fields[f].applyAsDouble(t);
+            doubles[i] += x;
+            doubles[i + 1] = Math.min(doubles[i + 1], x);
+            doubles[i + 2] = Math.max(doubles[i + 2], x);
+            update(f * 2, x, n);
+        }
+    }
+
+    <T> void accumulate(T t, ToLongFunction<? super T>[] fields) {
+        long n = ++count;
+        for (int f = 0, i = 0; f < fields.length; f++, i += STRIDE) {
+            long x = fields[f].applyAsLong(t);
+            longs[i] += x;
+            longs[i + 1] = Math.min(longs[i + 1], x);
+            longs[i + 2] = Math.max(longs[i + 2], x);
+            update(f * 2, x, n);
+        }
+    }
+
+    private void update(int m, double x, long n) {
+        double delta = x - moments[m];
+        moments[m] += delta / n;
+        moments[m + 1] += delta * (x - moments[m]);
+    }
+
+    AggregateSummary merge(AggregateSummary that) {
+        if (that.count == 0) {
+            return this;
+        } else if (count == 0) {
+            return that;
+        }
+        double na = count;
+        double nb = that.count;
+        count += that.count;
+        for (int i = 0; i < longs.length; i += STRIDE) {
+            longs[i] += that.longs[i];
+            longs[i + 1] = Math.min(longs[i + 1], that.longs[i + 1]);
+            longs[i + 2] = Math.max(longs[i + 2], that.longs[i + 2]);
+        }
+        for (int i = 0; i < doubles.length; i += STRIDE) {
+            doubles[i] += that.doubles[i];
+            doubles[i + 1] = Math.min(doubles[i + 1], that.doubles[i + 1]);
+            doubles[i + 2] = Math.max(doubles[i + 2], that.doubles[i + 2]);
+        }
+        for (int m = 0; m < moments.length; m += 2) {
+            double delta = that.moments[m] - moments[m];
+            moments[m] += delta * nb / count;
+            moments[m + 1] += that.moments[m + 1] + delta * delta * na * nb / count;
+        }
+        return this;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("AggregateSummary(count=").append(count);
+        for (int f = 0; f < fieldCount(); f++) {
+            if (integral) {
+                sb.append(String.format(", [sum=%d, min=%d, max=%d, mean=%f, variance=%f]",
+                        longSum(f), longMin(f), longMax(f), mean(f), variance(f)));
+            } else {
+                sb.append(String.format(", [sum=%f, min=%f, max=%f, mean=%f, variance=%f]",
+                        sum(f), min(f), max(f), mean(f), variance(f)));
+            }
+        }
+        return sb.append(')').toString();
+    }
+}
@@ -0,0 +1,203 @@
+package cc.domovoi.lambda;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInput;
+import java.io.DataInputStream;
+import java.io.DataOutput;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The counts per key of a grouping, produced by `EJCollector.groupingByCountState`, which can be encoded,
+ * shipped to another JVM and merged there.
+ * <p>
+ * `merge` is associative and commutative, so the states of several workers can be combined in any order.
+ * The encoding is the number of keys, then each key written by a `KeyCodec` followed by its count as a varint.
+ *
+ * @param <K> the type of the keys.
+ */
+public final class CountState<K> {
+
+    static final int VERSION = 1;
+
+    private final Map<K, long[]> counts;
+
+    public CountState() {
+        this.counts = new HashMap<>();
+    }
+
+    /**
+     * Adds one to the count of `key`.
+     */
+    public CountState<K> add(K key) {
+        return add(key, 1L);
+    }
+
+    /**
+     * @param key the key.
+     * @param n   the count to add, positive.
+     * @return this state.
+     */
+    public CountState<K> add(K key, long n) {
+        Objects.requireNonNull(key, "element cannot be mapped to a null key");
+        long[] c = counts.get(key);
+        if (c == null) {
+            counts.put(key, new long[]{n});
+        } else {
+            c[0] += n;
+        }
+        return this;
+    }
+
+    /**
+     * Adds the counts of `that` to this state.
+     *
+     * @param that another state, left unchanged.
+     * @return this state.
+     */
+    public CountState<K> merge(CountState<? extends K> that) {
+        that.counts.forEach((key, c) -> add(key, c[0]));
+        return this;
+    }
+
+    public long count(K key) {
+        long[] c = counts.get(key);
+        return c == null ? 0L : c[0];
+    }
+
+    /**
+     * @return the number of keys.
+     */
+    public int size() {
+        return counts.size();
+    }
+
+    /**
+     * @return the sum of the counts.
+     */
+    public long total() {
+        long total = 0L;
+        for (long[] c : counts.values()) {
+            total += c[0];
+        }
+        return total;
+    }
+
+    public Map<K, Long> toMap() {
+        Map<K, Long> map = new HashMap<>();
+        counts.forEach((key, c) -> map.put(key, c[0]));
+        return map;
+    }
+
+    /**
+     * @return the counts, as `EJCollector.groupingByCount` produces them.
+     */
+    public Map<K, Integer> toIntMap() {
+        Map<K, Integer> map = new HashMap<>();
+        counts.forEach((key, c) -> map.put(key, Math.toIntExact(c[0])));
+        return map;
+    }
+
+    public byte[] encode(KeyCodec<? super K> codec) {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(VERSION);
+            writeVarLong(out, counts.size());
+            for (Map.Entry<K, long[]> entry : counts.entrySet()) {
+                codec.write(out, entry.getKey());
+                writeVarLong(out, entry.getValue()[0]);
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes a state encoded by `encode`.
+     * @param codec the codec the state was encoded with.
+     * @param <K>   the type of the keys.
+     * @return the decoded state.
+     * @throws IllegalArgumentException if `bytes` is not a valid encoding.
+     */
+    public static <K> CountState<K> decode(byte[] bytes, KeyCodec<K> codec) {
+        CountState<K> state = new CountState<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            checkVersion(in);
+            int n = readLength(in);
+            for (int i = 0; i < n; i++) {
+                K key = codec.read(in);
+                state.add(key, readVarLong(in));
+            }
+            checkEnd(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid encoded CountState", e);
+        }
+        return state;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof CountState && toMap().equals(((CountState<?>) o).toMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return toMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "CountState" + toMap();
+    }
+
+    static void writeVarLong(DataOutput out, long v) throws IOException {
+        while ((v & ~0x7FL) != 0) {
+            out.writeByte((int) (v & 0x7F) | 0x80);
+            v >>>= 7;
+        }
+        out.writeByte((int) v);
+    }
+
+    static long readVarLong(DataInput in) throws IOException {
+        long v = 0L;
+        for (int shift = 0; shift < 64; shift += 7) {
+            byte b = in.readByte();
+            if (shift == 63 && (b & 0xFF) > 1) {
+                // the tenth byte only holds bit 63
+                break;
+            }
+            v |= (long) (b & 0x7F) << shift;
+            if (b >= 0) {
+                return v;
+            }
+        }
+        throw new IOException("Malformed varint");
+    }
+
+    static int readLength(DataInput in) throws IOException {
+        long v = readVarLong(in);
+        if (v < 0 || v > Integer.MAX_VALUE) {
+            throw new IOException("Invalid length " + v);
+        }
+        return (int) v;
+    }
+
+    static void checkVersion(DataInput in) throws IOException {
+        int version = in.readUnsignedByte();
+        if (version != VERSION) {
+            throw new IOException("Unsupported version " + version);
+        }
+    }
+
+    static void checkEnd(DataInputStream in) throws IOException {
+        if (in.read() != -1) {
+            throw new IOException("Trailing bytes");
+        }
+    }
+}
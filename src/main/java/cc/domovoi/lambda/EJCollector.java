@@ -1,10 +1,22 @@
 package cc.domovoi.lambda;
 
+import cc.domovoi.lambda.function.MultiMatch;
+
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
+import java.util.Spliterators;
+import java.util.function.BiConsumer;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.function.Supplier;
+import java.util.function.ToDoubleFunction;
+import java.util.function.ToLongFunction;
 import java.util.stream.Collector;
 import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
 
 public class EJCollector {
 
@@ -41,4 +53,199 @@ public class EJCollector {
         return Collectors.groupingBy(classifier1, Collectors.groupingBy(classifier2, Collectors.groupingBy(classifier3, downstream)));
     }
 
+    /**
+     * Counts elements per key into a `CountState`, which can be encoded and merged with the states of other JVMs.
+     *
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @return a Collector implementing the counting group-by operation.
+     */
+    public static <T, K> Collector<T, ?, CountState<K>> groupingByCountState(Function<? super T, ? extends K> classifier) {
+        return Collector.of(
+                CountState<K>::new,
+                (state, t) -> state.add(classifier.apply(t)),
+                CountState::merge,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Counts elements per pair of keys into a `NestedCountState`, which can be encoded and merged with the states
+     * of other JVMs.
+     *
+     * @param classifier1 the classifier function mapping input elements to outer keys.
+     * @param classifier2 the classifier function mapping input elements to inner keys.
+     * @param <T>         the type of the input elements.
+     * @param <K1>        the type of the outer keys.
+     * @param <K2>        the type of the inner keys.
+     * @return a Collector implementing the two-level counting group-by operation.
+     */
+    public static <T, K1, K2> Collector<T, ?, NestedCountState<K1, K2>> groupingTwiceByCountState(Function<? super T, ? extends K1> classifier1,
+                                                                                                Function<? super T, ? extends K2> classifier2) {
+        return Collector.of(
+                NestedCountState<K1, K2>::new,
+                (state, t) -> state.add(classifier1.apply(t), classifier2.apply(t)),
+                NestedCountState::merge,
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Groups elements and computes count, sum, min, max, mean and variance of several numeric fields
+     * per group in a single pass. The statistics of a group are kept in a few primitive arrays.
+     *
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param fields     the numeric fields, indexed in the result in the given order.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @return a Collector implementing the group-by operation.
+     */
+    @SafeVarargs
+    public static <T, K> Collector<T, ?, Map<K, AggregateSummary>> groupingByAggregates(Function<? super T, ? extends K> classifier,
+                                                                                       ToDoubleFunction<? super T>... fields) {
+        return aggregating(classifier, () -> new AggregateSummary(fields.length, false), (summary, t) -> summary.accumulate(t, fields));
+    }
+
+    /**
+     * Same as `groupingByAggregates`, for integral fields whose sums are kept exact in `long`s.
+     *
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param fields     the integral fields, indexed in the result in the given order.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @return a Collector implementing the group-by operation.
+     */
+    @SafeVarargs
+    public static <T, K> Collector<T, ?, Map<K, AggregateSummary>> groupingByLongAggregates(Function<? super T, ? extends K> classifier,
+                                                                                           ToLongFunction<? super T>... fields) {
+        return aggregating(classifier, () -> new AggregateSummary(fields.length, true), (summary, t) -> summary.accumulate(t, fields));
+    }
+
+    private static <T, K> Collector<T, ?, Map<K, AggregateSummary>> aggregating(Function<? super T, ? extends K> classifier,
+                                                                               Supplier<AggregateSummary> newSummary,
+                                                                               BiConsumer<AggregateSummary, T> accumulator) {
+        return Collector.of(
+                HashMap<K, AggregateSummary>::new,
+                (m, t) -> {
+                    K key = classifier.apply(t);
+                    AggregateSummary summary = m.get(key);
+                    if (summary == null) {
+                        summary = newSummary.get();
+                        m.put(key, summary);
+                    }
+                    accumulator.accept(summary, t);
+                },
+                (m1, m2) -> {
+                    m2.forEach((key, summary) -> m1.merge(key, summary, AggregateSummary::merge));
+                    return m1;
+                },
+                Collector.Characteristics.IDENTITY_FINISH);
+    }
+
+    /**
+     * Groups input already sorted by key. Each run of adjacent elements with equal keys is a group,
+     * reduced by `downstream` and finished as soon as the key changes, so that at most two downstream
+     * containers are open at a time. Keys appearing in separate runs are reported with an IllegalStateException.
+     *
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param downstream a Collector implementing the downstream reduction.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @param <A>        the intermediate accumulation type of the downstream collector.
+     * @param <D>        the result type of the downstream reduction.
+     * @return a Collector producing the groups in encounter order.
+     */
+    public static <T, K, A, D> Collector<T, ?, Map<K, D>> groupingSortedBy(Function<? super T, ? extends K> classifier,
+                                                                          Collector<? super T, A, D> downstream) {
+        return SortedGrouping.collector(classifier, downstream, null);
+    }
+
+    /**
+     * Groups input sorted by key, checking that the keys of successive runs are increasing according to `order`.
+     *
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param downstream a Collector implementing the downstream reduction.
+     * @param order      the order of the keys in the input.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @param <A>        the intermediate accumulation type of the downstream collector.
+     * @param <D>        the result type of the downstream reduction.
+     * @return a Collector producing the groups in encounter order.
+     * @see #groupingSortedBy(Function, Collector)
+     */
+    public static <T, K, A, D> Collector<T, ?, Map<K, D>> groupingSortedBy(Function<? super T, ? extends K> classifier,
+                                                                          Collector<? super T, A, D> downstream,
+                                                                          Comparator<? super K> order) {
+        return SortedGrouping.collector(classifier, downstream, order);
+    }
+
+    /**
+     * Lazily groups a stream already sorted by key. Each group is emitted as soon as the next key is seen,
+     * so memory stays constant whatever the number of groups.
+     *
+     * @param stream     the input stream.
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param downstream a Collector implementing the downstream reduction.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @param <A>        the intermediate accumulation type of the downstream collector.
+     * @param <D>        the result type of the downstream reduction.
+     * @return a sequential stream of the groups.
+     */
+    public static <T, K, A, D> Stream<Map.Entry<K, D>> groupSortedBy(Stream<? extends T> stream,
+                                                                    Function<? super T, ? extends K> classifier,
+                                                                    Collector<? super T, A, D> downstream) {
+        return groupSortedBy(stream, classifier, downstream, null);
+    }
+
+    /**
+     * Lazily groups a stream sorted by key, checking that the keys of successive groups are increasing
+     * according to `order`, in which case an IllegalStateException is thrown.
+     *
+     * @param stream     the input stream.
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param downstream a Collector implementing the downstream reduction.
+     * @param order      the order of the keys in the input, or `null` not to check it.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @param <A>        the intermediate accumulation type of the downstream collector.
+     * @param <D>        the result type of the downstream reduction.
+     * @return a sequential stream of the groups.
+     */
+    public static <T, K, A, D> Stream<Map.Entry<K, D>> groupSortedBy(Stream<? extends T> stream,
+                                                                    Function<? super T, ? extends K> classifier,
+                                                                    Collector<? super T, A, D> downstream,
+                                                                    Comparator<? super K> order) {
+        return StreamSupport.stream(new SortedGrouping.RunSpliterator<T, K, A, D>(stream.sequential().spliterator(), classifier, downstream, order), false)
+                .onClose(stream::close);
+    }
+
+    /**
+     * Lazily groups an iterator already sorted by key.
+     *
+     * @param iterator   the input iterator.
+     * @param classifier the classifier function mapping input elements to keys.
+     * @param downstream a Collector implementing the downstream reduction.
+     * @param <T>        the type of the input elements.
+     * @param <K>        the type of the keys.
+     * @param <A>        the intermediate accumulation type of the downstream collector.
+     * @param <D>        the result type of the downstream reduction.
+     * @return a sequential stream of the groups.
+     * @see #groupSortedBy(Stream, Function, Collector)
+     */
+    public static <T, K, A, D> Stream<Map.Entry<K, D>> groupSortedBy(Iterator<? extends T> iterator,
+                                                                    Function<? super T, ? extends K> classifier,
+                                                                    Collector<? super T, A, D> downstream) {
+        return StreamSupport.stream(new SortedGrouping.RunSpliterator<T, K, A, D>(Spliterators.spliteratorUnknownSize(iterator, 0), classifier, downstream, null), false);
+    }
+
+    /**
+     * Counts, for each case of `cases`, the elements it is defined at, without allocating per element.
+     *
+     * @param cases the cases.
+     * @param <T>   the type of the input elements.
+     * @return a Collector producing the counts indexed by case.
+     */
+    public static <T> Collector<T, ?, long[]> countingMatches(MultiMatch<T, ?> cases) {
+        return cases.counting();
+    }
 }
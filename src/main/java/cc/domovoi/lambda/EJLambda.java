@@ -47,4 +47,34 @@ public class EJLambda {
     public static <T> ToLongFunction<T> toLongValueOne() {
         return (t) -> 1L;
     }
+
+    /**
+     * Create a conjunction of predicates which evaluates them in the order minimizing the expected cost,
+     * learned by sampling their cost and rejection rate. The predicates must be independent and total,
+     * since they may be evaluated in any order and without short-circuiting.
+     *
+     * @param ps  the predicates.
+     * @param <T> the type of the input to the predicate.
+     * @return An AdaptivePredicate instance.
+     */
+    @SafeVarargs
+    public static <T> AdaptivePredicate<T> adaptiveAnd(Predicate<? super T>... ps) {
+        return new AdaptivePredicate<>(ps, true, AdaptivePredicate.DEFAULT_SAMPLE_INTERVAL,
+                AdaptivePredicate.DEFAULT_REORDER_INTERVAL, AdaptivePredicate.DEFAULT_STABLE_ROUNDS);
+    }
+
+    /**
+     * Create a disjunction of predicates which evaluates them in the order minimizing the expected cost,
+     * learned by sampling their cost and acceptance rate. The predicates must be independent and total,
+     * since they may be evaluated in any order and without short-circuiting.
+     *
+     * @param ps  the predicates.
+     * @param <T> the type of the input to the predicate.
+     * @return An AdaptivePredicate instance.
+     */
+    @SafeVarargs
+    public static <T> AdaptivePredicate<T> adaptiveOr(Predicate<? super T>... ps) {
+        return new AdaptivePredicate<>(ps, false, AdaptivePredicate.DEFAULT_SAMPLE_INTERVAL,
+                AdaptivePredicate.DEFAULT_REORDER_INTERVAL, AdaptivePredicate.DEFAULT_STABLE_ROUNDS);
+    }
 }
@@ -0,0 +1,100 @@
+package cc.domovoi.lambda;
+
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * Binary encoding of the keys of a `CountState` or a `NestedCountState`.
+ * Each distinct key is written once, in the dictionary of the encoded state.
+ *
+ * @param <K> the type of the keys.
+ */
+public interface KeyCodec<K> {
+
+    void write(DataOutput out, K key) throws IOException;
+
+    K read(DataInput in) throws IOException;
+
+    /**
+     * @return a codec writing strings as a varint length followed by their UTF-8 bytes.
+     */
+    static KeyCodec<String> strings() {
+        return new KeyCodec<String>() {
+            @Override
+            public void write(DataOutput out, String key) throws IOException {
+                byte[] bytes = key.getBytes(StandardCharsets.UTF_8);
+                CountState.writeVarLong(out, bytes.length);
+                out.write(bytes);
+            }
+
+            @Override
+            public String read(DataInput in) throws IOException {
+                byte[] bytes = new byte[CountState.readLength(in)];
+                in.readFully(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+        };
+    }
+
+    /**
+     * @return a codec writing integers as zigzag varints.
+     */
+    static KeyCodec<Integer> integers() {
+        return new KeyCodec<Integer>() {
+            @Override
+            public void write(DataOutput out, Integer key) throws IOException {
+                CountState.writeVarLong(out, ((key << 1) ^ (key >> 31)) & 0xFFFFFFFFL);
+            }
+
+            @Override
+            public Integer read(DataInput in) throws IOException {
+                int v = (int) CountState.readVarLong(in);
+                return (v >>> 1) ^ -(v & 1);
+            }
+        };
+    }
+
+    /**
+     * @return a codec writing longs as zigzag varints.
+     */
+    static KeyCodec<Long> longs() {
+        return new KeyCodec<Long>() {
+            @Override
+            public void write(DataOutput out, Long key) throws IOException {
+                CountState.writeVarLong(out, (key << 1) ^ (key >> 63));
+            }
+
+            @Override
+            public Long read(DataInput in) throws IOException {
+                long v = CountState.readVarLong(in);
+                return (v >>> 1) ^ -(v & 1);
+            }
+        };
+    }
+
+    /**
+     * @param type the enum class.
+     * @param <E>  the enum type.
+     * @return a codec writing enum constants as the varint of their ordinal.
+     */
+    static <E extends Enum<E>> KeyCodec<E> enums(Class<E> type) {
+        E[] constants = type.getEnumConstants();
+        return new KeyCodec<E>() {
+            @Override
+            public void write(DataOutput out, E key) throws IOException {
+                CountState.writeVarLong(out, key.ordinal());
+            }
+
+            @Override
+            public E read(DataInput in) throws IOException {
+                int ordinal = CountState.readLength(in);
+                if (ordinal >= constants.length) {
+                    throw new IOException(String.format("Invalid ordinal %d of %s", ordinal, type.getName()));
+                }
+                return constants[ordinal];
+            }
+        };
+    }
+}
@@ -0,0 +1,183 @@
+package cc.domovoi.lambda;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+
+/**
+ * The counts per pair of keys of a two-level grouping, produced by `EJCollector.groupingTwiceByCountState`,
+ * which can be encoded, shipped to another JVM and merged there.
+ * <p>
+ * The inner keys usually repeat across outer groups, so the encoding starts with a dictionary of the distinct
+ * inner keys, and every count refers to its inner key by its varint index in the dictionary.
+ *
+ * @param <K1> the type of the outer keys.
+ * @param <K2> the type of the inner keys.
+ */
+public final class NestedCountState<K1, K2> {
+
+    private final Map<K1, CountState<K2>> groups;
+
+    public NestedCountState() {
+        this.groups = new HashMap<>();
+    }
+
+    public NestedCountState<K1, K2> add(K1 key1, K2 key2) {
+        return add(key1, key2, 1L);
+    }
+
+    public NestedCountState<K1, K2> add(K1 key1, K2 key2, long n) {
+        Objects.requireNonNull(key1, "element cannot be mapped to a null key");
+        groups.computeIfAbsent(key1, k -> new CountState<>()).add(key2, n);
+        return this;
+    }
+
+    /**
+     * Adds the counts of `that` to this state.
+     *
+     * @param that another state, left unchanged.
+     * @return this state.
+     */
+    public NestedCountState<K1, K2> merge(NestedCountState<? extends K1, ? extends K2> that) {
+        that.groups.forEach((key1, group) -> groups.computeIfAbsent(key1, k -> new CountState<>()).merge(group));
+        return this;
+    }
+
+    public long count(K1 key1, K2 key2) {
+        CountState<K2> group = groups.get(key1);
+        return group == null ? 0L : group.count(key2);
+    }
+
+    /**
+     * @param key1 the outer key.
+     * @return the counts of the group of `key1`, empty if there is none.
+     */
+    public CountState<K2> group(K1 key1) {
+        CountState<K2> group = groups.get(key1);
+        return group == null ? new CountState<>() : new CountState<K2>().merge(group);
+    }
+
+    /**
+     * @return the number of outer keys.
+     */
+    public int size() {
+        return groups.size();
+    }
+
+    public long total() {
+        long total = 0L;
+        for (CountState<K2> group : groups.values()) {
+            total += group.total();
+        }
+        return total;
+    }
+
+    public Map<K1, Map<K2, Long>> toMap() {
+        Map<K1, Map<K2, Long>> map = new HashMap<>();
+        groups.forEach((key1, group) -> map.put(key1, group.toMap()));
+        return map;
+    }
+
+    /**
+     * @return the counts, as `EJCollector.groupingTwiceBy` with `EJCollector.countingInt` produces them.
+     */
+    public Map<K1, Map<K2, Integer>> toIntMap() {
+        Map<K1, Map<K2, Integer>> map = new HashMap<>();
+        groups.forEach((key1, group) -> map.put(key1, group.toIntMap()));
+        return map;
+    }
+
+    public byte[] encode(KeyCodec<? super K1> codec1, KeyCodec<? super K2> codec2) {
+        Map<K1, Map<K2, Long>> counts = toMap();
+        Map<K2, Integer> dictionary = new HashMap<>();
+        List<K2> keys = new ArrayList<>();
+        for (Map<K2, Long> group : counts.values()) {
+            for (K2 key2 : group.keySet()) {
+                if (!dictionary.containsKey(key2)) {
+                    dictionary.put(key2, keys.size());
+                    keys.add(key2);
+                }
+            }
+        }
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(bytes)) {
+            out.writeByte(CountState.VERSION);
+            CountState.writeVarLong(out, keys.size());
+            for (K2 key2 : keys) {
+                codec2.write(out, key2);
+            }
+            CountState.writeVarLong(out, counts.size());
+            for (Map.Entry<K1, Map<K2, Long>> group : counts.entrySet()) {
+                codec1.write(out, group.getKey());
+                CountState.writeVarLong(out, group.getValue().size());
+                for (Map.Entry<K2, Long> count : group.getValue().entrySet()) {
+                    CountState.writeVarLong(out, dictionary.get(count.getKey()));
+                    CountState.writeVarLong(out, count.getValue());
+                }
+            }
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        return bytes.toByteArray();
+    }
+
+    /**
+     * @param bytes  a state encoded by `encode`.
+     * @param codec1 the codec of the outer keys the state was encoded with.
+     * @param codec2 the codec of the inner keys the state was encoded with.
+     * @param <K1>   the type of the outer keys.
+     * @param <K2>   the type of the inner keys.
+     * @return the decoded state.
+     * @throws IllegalArgumentException if `bytes` is not a valid encoding.
+     */
+    public static <K1, K2> NestedCountState<K1, K2> decode(byte[] bytes, KeyCodec<K1> codec1, KeyCodec<K2> codec2) {
+        NestedCountState<K1, K2> state = new NestedCountState<>();
+        try (DataInputStream in = new DataInputStream(new ByteArrayInputStream(bytes))) {
+            CountState.checkVersion(in);
+            int n = CountState.readLength(in);
+            List<K2> keys = new ArrayList<>();
+            for (int i = 0; i < n; i++) {
+                keys.add(codec2.read(in));
+            }
+            int groups = CountState.readLength(in);
+            for (int g = 0; g < groups; g++) {
+                K1 key1 = codec1.read(in);
+                int counts = CountState.readLength(in);
+                for (int i = 0; i < counts; i++) {
+                    int index = CountState.readLength(in);
+                    if (index >= keys.size()) {
+                        throw new IOException("Invalid key index " + index);
+                    }
+                    state.add(key1, keys.get(index), CountState.readVarLong(in));
+                }
+            }
+            CountState.checkEnd(in);
+        } catch (IOException e) {
+            throw new IllegalArgumentException("Invalid encoded NestedCountState", e);
+        }
+        return state;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        return o instanceof NestedCountState && toMap().equals(((NestedCountState<?, ?>) o).toMap());
+    }
+
+    @Override
+    public int hashCode() {
+        return toMap().hashCode();
+    }
+
+    @Override
+    public String toString() {
+        return "NestedCountState" + toMap();
+    }
+}
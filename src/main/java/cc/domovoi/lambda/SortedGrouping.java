@@ -0,0 +1,209 @@
+package cc.domovoi.lambda;
+
+import java.util.AbstractMap;
+import java.util.Comparator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Spliterator;
+import java.util.Spliterators;
+import java.util.function.Consumer;
+import java.util.function.Function;
+import java.util.stream.Collector;
+
+/**
+ * Group-by over input sorted by key, where each group is a run of adjacent elements with equal keys.
+ * Only the downstream containers of the first and the current run are kept open, every other run
+ * is finished as soon as the key changes.
+ * <p>
+ * The first run stays open because, in a parallel reduction, it may continue the last run of the
+ * partial result on its left.
+ *
+ * @param <T> the type of the input elements.
+ * @param <K> the type of the keys.
+ * @param <A> the intermediate accumulation type of the downstream collector.
+ * @param <D> the result type of the downstream reduction.
+ */
+final class SortedGrouping<T, K, A, D> {
+
+    private final Function<? super T, ? extends K> classifier;
+
+    private final Collector<? super T, A, D> downstream;
+
+    private final Comparator<? super K> order;
+
+    /**
+     * Finished runs in encounter order. The first run is inserted with a `null` placeholder
+     * to fix its position, and gets its result in `finish`.
+     */
+    private final Map<K, D> runs = new LinkedHashMap<>();
+
+    private boolean empty = true;
+
+    private K headKey;
+
+    private A headAcc;
+
+    private boolean hasTail;
+
+    private K tailKey;
+
+    private A tailAcc;
+
+    private SortedGrouping(Function<? super T, ? extends K> classifier, Collector<? super T, A, D> downstream, Comparator<? super K> order) {
+        this.classifier = classifier;
+        this.downstream = downstream;
+        this.order = order;
+    }
+
+    static <T, K, A, D> Collector<T, ?, Map<K, D>> collector(Function<? super T, ? extends K> classifier,
+                                                            Collector<? super T, A, D> downstream,
+                                                            Comparator<? super K> order) {
+        return Collector.of(
+                () -> new SortedGrouping<T, K, A, D>(classifier, downstream, order),
+                SortedGrouping::accumulate,
+                SortedGrouping::combine,
+                SortedGrouping::finish);
+    }
+
+    private void accumulate(T t) {
+        K key = classifier.apply(t);
+        if (empty) {
+            empty = false;
+            headKey = key;
+            headAcc = downstream.supplier().get();
+            runs.put(key, null);
+            downstream.accumulator().accept(headAcc, t);
+        } else if (Objects.equals(key, hasTail ? tailKey : headKey)) {
+            downstream.accumulator().accept(hasTail ? tailAcc : headAcc, t);
+        } else {
+            A acc = downstream.supplier().get();
+            downstream.accumulator().accept(acc, t);
+            append(key, acc);
+        }
+    }
+
+    private SortedGrouping<T, K, A, D> combine(SortedGrouping<T, K, A, D> right) {
+        if (right.empty) {
+            return this;
+        } else if (empty) {
+            return right;
+        }
+        if (Objects.equals(hasTail ? tailKey : headKey, right.headKey)) {
+            if (hasTail) {
+                tailAcc = downstream.combiner().apply(tailAcc, right.headAcc);
+            } else {
+                headAcc = downstream.combiner().apply(headAcc, right.headAcc);
+            }
+        } else {
+            append(right.headKey, right.headAcc);
+        }
+        if (right.hasTail) {
+            for (Map.Entry<K, D> run : right.runs.entrySet()) {
+                if (run.getValue() != null || !Objects.equals(run.getKey(), right.headKey)) {
+                    closeTail();
+                    check(run.getKey());
+                    runs.put(run.getKey(), run.getValue());
+                }
+            }
+            append(right.tailKey, right.tailAcc);
+        }
+        return this;
+    }
+
+    private Map<K, D> finish() {
+        if (!empty) {
+            runs.put(headKey, downstream.finisher().apply(headAcc));
+            closeTail();
+        }
+        return runs;
+    }
+
+    private void append(K key, A acc) {
+        K last = hasTail ? tailKey : headKey;
+        if (order != null && order.compare(last, key) >= 0) {
+            throw new IllegalStateException(String.format("Input is not sorted by key: %s after %s", key, last));
+        }
+        closeTail();
+        check(key);
+        hasTail = true;
+        tailKey = key;
+        tailAcc = acc;
+    }
+
+    private void closeTail() {
+        if (hasTail) {
+            runs.put(tailKey, downstream.finisher().apply(tailAcc));
+            hasTail = false;
+            tailKey = null;
+            tailAcc = null;
+        }
+    }
+
+    private void check(K key) {
+        if (runs.containsKey(key)) {
+            throw new IllegalStateException(String.format("Input is not sorted by key: %s appears in separate runs", key));
+        }
+    }
+
+    /**
+     * Spliterator of the runs of a sorted source, each run being reduced as soon as the next key is seen.
+     */
+    static final class RunSpliterator<T, K, A, D> extends Spliterators.AbstractSpliterator<Map.Entry<K, D>> implements Consumer<T> {
+
+        private final Spliterator<? extends T> source;
+
+        private final Function<? super T, ? extends K> classifier;
+
+        private final Collector<? super T, A, D> downstream;
+
+        private final Comparator<? super K> order;
+
+        private boolean hasPending;
+
+        private T pending;
+
+        private K pendingKey;
+
+        private boolean started;
+
+        private K previousKey;
+
+        RunSpliterator(Spliterator<? extends T> source, Function<? super T, ? extends K> classifier,
+                       Collector<? super T, A, D> downstream, Comparator<? super K> order) {
+            super(Long.MAX_VALUE, Spliterator.ORDERED | Spliterator.NONNULL);
+            this.source = source;
+            this.classifier = classifier;
+            this.downstream = downstream;
+            this.order = order;
+        }
+
+        @Override
+        public void accept(T t) {
+            hasPending = true;
+            pending = t;
+            pendingKey = classifier.apply(t);
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super Map.Entry<K, D>> action) {
+            if (!hasPending && !source.tryAdvance(this)) {
+                return false;
+            }
+            K key = pendingKey;
+            if (started && order != null && order.compare(previousKey, key) >= 0) {
+                throw new IllegalStateException(String.format("Input is not sorted by key: %s after %s", key, previousKey));
+            }
+            A acc = downstream.supplier().get();
+            do {
+                downstream.accumulator().accept(acc, pending);
+                hasPending = false;
+                pending = null;
+            } while (source.tryAdvance(this) && Objects.equals(pendingKey, key));
+            started = true;
+            previousKey = key;
+            action.accept(new AbstractMap.SimpleImmutableEntry<>(key, downstream.finisher().apply(acc)));
+            return true;
+        }
+    }
+}
@@ -0,0 +1,274 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+
+/**
+ * A run of prefix and suffix cases compiled into character tries, produced by `PartialFunctions.compile`
+ * for adjacent cases built with `PartialFunctions.onPrefix` and `PartialFunctions.onSuffix`.
+ * <p>
+ * Prefixes are stored in one trie and reversed suffixes in another, each flattened into arrays of sorted edge
+ * labels. A string is matched in one pass from its start for the prefixes and one pass from its end for the
+ * suffixes, instead of one `startsWith` or `endsWith` per case. In `FIRST` mode the case added first wins,
+ * as with `orElse`, and a pass stops as soon as no deeper case can have a higher priority. In `LONGEST` mode
+ * the longest matching prefix or suffix wins, ties going to the case added first.
+ *
+ * @param <B> the type of the result of the function.
+ */
+public class AffixTrie<B> extends AbstractPartialFunction<String, B> {
+
+    /**
+     * How a string matching several cases is dispatched.
+     */
+    public enum Mode {
+        /**
+         * The case added first wins.
+         */
+        FIRST,
+        /**
+         * The case with the longest prefix or suffix wins.
+         */
+        LONGEST
+    }
+
+    private static final int LINEAR_EDGES = 8;
+
+    private final Mode mode;
+
+    private final BiFunction<String, Integer, B>[] bodies;
+
+    private final Trie prefixes;
+
+    private final Trie suffixes;
+
+    @SuppressWarnings("unchecked")
+    AffixTrie(List<PartialFunctionCompanion.AffixCase<B>> cases, Mode mode) {
+        this.mode = mode;
+        this.bodies = new BiFunction[cases.size()];
+        Builder prefixBuilder = new Builder();
+        Builder suffixBuilder = new Builder();
+        for (int i = 0; i < cases.size(); i++) {
+            PartialFunctionCompanion.AffixCase<B> c = cases.get(i);
+            bodies[i] = c.body;
+            if (c.suffix) {
+                suffixBuilder.add(new StringBuilder(c.affix).reverse().toString(), i);
+            } else {
+                prefixBuilder.add(c.affix, i);
+            }
+        }
+        this.prefixes = prefixBuilder.build();
+        this.suffixes = suffixBuilder.build();
+    }
+
+    /**
+     * @return the number of cases.
+     */
+    public int size() {
+        return bodies.length;
+    }
+
+    /**
+     * @return the number of nodes of the prefix and suffix tries.
+     */
+    public int nodeCount() {
+        return prefixes.terminal.length + suffixes.terminal.length;
+    }
+
+    public Mode mode() {
+        return mode;
+    }
+
+    @Override
+    public Boolean isDefinedAt(String s) {
+        return match(s) >= 0L;
+    }
+
+    @Override
+    public B applyOrElse(String s, Function<? super String, ? extends B> zero) {
+        long m = match(s);
+        if (m < 0L) {
+            return zero.apply(s);
+        }
+        return bodies[(int) (m >>> 32)].apply(s, (int) m);
+    }
+
+    /**
+     * @return the index of the matching case in the high half and the matched length in the low half,
+     * or -1.
+     */
+    private long match(String s) {
+        long p = prefixes.match(s, false, mode);
+        long q = suffixes.match(s, true, mode);
+        if (p < 0L || q < 0L) {
+            return Math.max(p, q);
+        } else if (mode == Mode.FIRST) {
+            return (p >>> 32) <= (q >>> 32) ? p : q;
+        } else {
+            int pl = (int) p;
+            int ql = (int) q;
+            return pl > ql || (pl == ql && (p >>> 32) <= (q >>> 32)) ? p : q;
+        }
+    }
+
+    /**
+     * A trie flattened into arrays, node 0 being the root.
+     */
+    private static final class Trie {
+
+        /**
+         * The edges of node `n` are `[edgeStart[n], edgeStart[n + 1])`, sorted by label.
+         */
+        private final int[] edgeStart;
+
+        private final char[] labels;
+
+        private final int[] targets;
+
+        /**
+         * The case ending at each node, or -1.
+         */
+        private final int[] terminal;
+
+        /**
+         * The lowest case ending strictly below each node, or `Integer.MAX_VALUE`.
+         */
+        private final int[] below;
+
+        private Trie(int[] edgeStart, char[] labels, int[] targets, int[] terminal, int[] below) {
+            this.edgeStart = edgeStart;
+            this.labels = labels;
+            this.targets = targets;
+            this.terminal = terminal;
+            this.below = below;
+        }
+
+        private long match(String s, boolean reversed, Mode mode) {
+            if (terminal.length == 0) {
+                return -1L;
+            }
+            int length = s.length();
+            int node = 0;
+            int best = terminal[0];
+            int bestLength = 0;
+            for (int i = 0; i < length; i++) {
+                if (mode == Mode.FIRST ? best >= 0 && best < below[node] : below[node] == Integer.MAX_VALUE) {
+                    break;
+                }
+                node = child(node, s.charAt(reversed ? length - 1 - i : i));
+                if (node < 0) {
+                    break;
+                }
+                int t = terminal[node];
+                if (t >= 0 && (mode == Mode.LONGEST || best < 0 || t < best)) {
+                    best = t;
+                    bestLength = i + 1;
+                }
+            }
+            return best < 0 ? -1L : ((long) best << 32) | bestLength;
+        }
+
+        private int child(int node, char c) {
+            int from = edgeStart[node];
+            int to = edgeStart[node + 1];
+            if (to - from <= LINEAR_EDGES) {
+                for (int e = from; e < to; e++) {
+                    if (labels[e] == c) {
+                        return targets[e];
+                    }
+                }
+                return -1;
+            }
+            while (from < to) {
+                int mid = (from + to) >>> 1;
+                char label = labels[mid];
+                if (label < c) {
+                    from = mid + 1;
+                } else if (label > c) {
+                    to = mid;
+                } else {
+                    return targets[mid];
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class Builder {
+
+        private static final class Node {
+
+            private final TreeMap<Character, Node> children = new TreeMap<>();
+
+            private int terminal = -1;
+
+            private int id;
+        }
+
+        private final Node root = new Node();
+
+        private int size;
+
+        private void add(String affix, int index) {
+            Node node = root;
+            for (int i = 0; i < affix.length(); i++) {
+                node = node.children.computeIfAbsent(affix.charAt(i), c -> new Node());
+            }
+            if (node.terminal < 0) {
+                node.terminal = index;
+            }
+            size++;
+        }
+
+        private Trie build() {
+            if (size == 0) {
+                return new Trie(new int[1], new char[0], new int[0], new int[0], new int[0]);
+            }
+            List<Node> nodes = new ArrayList<>();
+            Deque<Node> queue = new ArrayDeque<>();
+            queue.add(root);
+            while (!queue.isEmpty()) {
+                Node node = queue.poll();
+                node.id = nodes.size();
+                nodes.add(node);
+                queue.addAll(node.children.values());
+            }
+            int n = nodes.size();
+            int[] edgeStart = new int[n + 1];
+            char[] labels = new char[n - 1];
+            int[] targets = new int[n - 1];
+            int[] terminal = new int[n];
+            int[] below = new int[n];
+            int e = 0;
+            for (int i = 0; i < n; i++) {
+                Node node = nodes.get(i);
+                edgeStart[i] = e;
+                terminal[i] = node.terminal;
+                for (Map.Entry<Character, Node> child : node.children.entrySet()) {
+                    labels[e] = child.getKey();
+                    targets[e] = child.getValue().id;
+                    e++;
+                }
+            }
+            edgeStart[n] = e;
+            // children have higher ids than their parent in breadth-first order
+            for (int i = n - 1; i >= 0; i--) {
+                int min = Integer.MAX_VALUE;
+                for (int k = edgeStart[i]; k < edgeStart[i + 1]; k++) {
+                    int t = targets[k];
+                    min = Math.min(min, below[t]);
+                    if (terminal[t] >= 0) {
+                        min = Math.min(min, terminal[t]);
+                    }
+                }
+                below[i] = min;
+            }
+            return new Trie(edgeStart, labels, targets, terminal, below);
+        }
+    }
+}
@@ -0,0 +1,271 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * A function which coalesces concurrent single-key calls into calls of a bulk function,
+ * produced by `EJFunction.batched`.
+ * <p>
+ * Keys are collected into a batch until it holds `maxBatch` distinct keys, in which case the bulk function
+ * runs on the thread of the caller completing the batch, or until `maxDelay` has elapsed since the first key
+ * of the batch, in which case the bulk function runs on the timer thread. A key requested several times
+ * within one batch is only passed once to the bulk function. Keys missing from the bulk result map to `null`.
+ * <p>
+ * Unless a timer is given, each function has its own daemon timer thread, started with the first batch and
+ * stopped after a second without one, so that a blocking bulk function only delays its own timed-out batches.
+ * A given timer runs the bulk function of timed-out batches on its own threads, which should not be shared
+ * with latency sensitive tasks when the bulk function blocks.
+ *
+ * @param <A> the type of the input to the function.
+ * @param <B> the type of the result of the function.
+ */
+public class BatchedFunction<A, B> implements EJFunction<A, B> {
+
+    private final Function<? super List<A>, ? extends Map<A, B>> bulk;
+
+    private final int maxBatch;
+
+    private final long maxDelayNanos;
+
+    private final ScheduledExecutorService timer;
+
+    private final Object lock = new Object();
+
+    private Map<A, CompletableFuture<B>> pending = new LinkedHashMap<>();
+
+    private long pendingSince;
+
+    private ScheduledFuture<?> pendingTimeout;
+
+    private final LongAdder requests = new LongAdder();
+
+    private final LongAdder deduplicated = new LongAdder();
+
+    private final LongAdder batches = new LongAdder();
+
+    private final LongAdder keys = new LongAdder();
+
+    private final LongAdder waitNanos = new LongAdder();
+
+    private final AtomicLong maxBatchSize = new AtomicLong();
+
+    BatchedFunction(Function<? super List<A>, ? extends Map<A, B>> bulk, int maxBatch, long maxDelayNanos,
+                    ScheduledExecutorService timer) {
+        if (maxBatch < 1) {
+            throw new IllegalArgumentException("maxBatch must be positive");
+        }
+        this.bulk = bulk;
+        this.maxBatch = maxBatch;
+        this.maxDelayNanos = maxDelayNanos;
+        this.timer = timer == null ? ownTimer() : timer;
+    }
+
+    /**
+     * Applies this function, waiting for the batch containing `a` to complete.
+     *
+     * @param a the function argument.
+     * @return the function result.
+     */
+    @Override
+    public B apply(A a) {
+        try {
+            return applyAsync(a).join();
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof RuntimeException) {
+                throw (RuntimeException) e.getCause();
+            } else if (e.getCause() instanceof Error) {
+                throw (Error) e.getCause();
+            } else {
+                throw e;
+            }
+        }
+    }
+
+    /**
+     * Adds `a` to the current batch. If `a` fills the batch up, the bulk function runs synchronously
+     * on the calling thread before this method returns.
+     *
+     * @param a the function argument.
+     * @return a future completed with the result once the batch has been processed.
+     */
+    public CompletableFuture<B> applyAsync(A a) {
+        Map<A, CompletableFuture<B>> full = null;
+        long since = 0L;
+        CompletableFuture<B> f;
+        synchronized (lock) {
+            requests.increment();
+            f = pending.get(a);
+            if (f != null) {
+                deduplicated.increment();
+                return f;
+            }
+            f = new CompletableFuture<>();
+            pending.put(a, f);
+            if (pending.size() == 1) {
+                pendingSince = System.nanoTime();
+            }
+            if (pending.size() >= maxBatch) {
+                since = pendingSince;
+                full = take();
+            } else if (pending.size() == 1) {
+                Map<A, CompletableFuture<B>> batch = pending;
+                pendingTimeout = timer.schedule(() -> flush(batch), maxDelayNanos, TimeUnit.NANOSECONDS);
+            }
+        }
+        if (full != null) {
+            run(full, since);
+        }
+        return f;
+    }
+
+    /**
+     * Processes the current batch now, on the calling thread.
+     */
+    public void flush() {
+        flush(null);
+    }
+
+    /**
+     * @return the statistics of this function.
+     */
+    public Stats stats() {
+        return new Stats(requests.sum(), deduplicated.sum(), batches.sum(), keys.sum(), maxBatchSize.get(), waitNanos.sum());
+    }
+
+    private void flush(Map<A, CompletableFuture<B>> expected) {
+        Map<A, CompletableFuture<B>> batch;
+        long since;
+        synchronized (lock) {
+            if (pending.isEmpty() || (expected != null && pending != expected)) {
+                return;
+            }
+            since = pendingSince;
+            batch = take();
+        }
+        run(batch, since);
+    }
+
+    private Map<A, CompletableFuture<B>> take() {
+        Map<A, CompletableFuture<B>> batch = pending;
+        pending = new LinkedHashMap<>();
+        if (pendingTimeout != null) {
+            pendingTimeout.cancel(false);
+            pendingTimeout = null;
+        }
+        return batch;
+    }
+
+    private void run(Map<A, CompletableFuture<B>> batch, long since) {
+        int size = batch.size();
+        batches.increment();
+        keys.add(size);
+        waitNanos.add(System.nanoTime() - since);
+        maxBatchSize.accumulateAndGet(size, Math::max);
+        try {
+            Map<A, B> result = bulk.apply(new ArrayList<>(batch.keySet()));
+            batch.forEach((a, f) -> f.complete(result.get(a)));
+        } catch (Throwable e) {
+            batch.values().forEach(f -> f.completeExceptionally(e));
+        }
+    }
+
+    private static ScheduledExecutorService ownTimer() {
+        ScheduledThreadPoolExecutor executor = new ScheduledThreadPoolExecutor(1, r -> {
+            Thread t = new Thread(r, "ej-lambda-batch-timer");
+            t.setDaemon(true);
+            return t;
+        });
+        executor.setRemoveOnCancelPolicy(true);
+        executor.setKeepAliveTime(1L, TimeUnit.SECONDS);
+        executor.allowCoreThreadTimeOut(true);
+        return executor;
+    }
+
+    /**
+     * Statistics of a BatchedFunction.
+     */
+    public static final class Stats {
+
+        private final long requests;
+
+        private final long deduplicated;
+
+        private final long batches;
+
+        private final long keys;
+
+        private final long maxBatchSize;
+
+        private final long waitNanos;
+
+        private Stats(long requests, long deduplicated, long batches, long keys, long maxBatchSize, long waitNanos) {
+            this.requests = requests;
+            this.deduplicated = deduplicated;
+            this.batches = batches;
+            this.keys = keys;
+            this.maxBatchSize = maxBatchSize;
+            this.waitNanos = waitNanos;
+        }
+
+        /**
+         * @return the number of single-key calls.
+         */
+        public long requests() {
+            return requests;
+        }
+
+        /**
+         * @return the number of calls served by a key already pending in the same batch.
+         */
+        public long deduplicated() {
+            return deduplicated;
+        }
+
+        /**
+         * @return the number of bulk calls.
+         */
+        public long batches() {
+            return batches;
+        }
+
+        /**
+         * @return the number of keys passed to the bulk function.
+         */
+        public long keys() {
+            return keys;
+        }
+
+        public long maxBatchSize() {
+            return maxBatchSize;
+        }
+
+        public double averageBatchSize() {
+            return batches == 0 ? 0.0 : (double) keys / batches;
+        }
+
+        /**
+         * @return the average time between the first key of a batch and the bulk call, in nanoseconds.
+         */
+        public double averageWaitNanos() {
+            return batches == 0 ? 0.0 : (double) waitNanos / batches;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Stats(requests=%d, deduplicated=%d, batches=%d, keys=%d, maxBatchSize=%d, averageWaitNanos=%.0f)",
+                    requests, deduplicated, batches, keys, maxBatchSize, averageWaitNanos());
+        }
+    }
+}
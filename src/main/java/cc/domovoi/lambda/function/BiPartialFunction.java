@@ -0,0 +1,126 @@
+package cc.domovoi.lambda.function;
+
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * A partial function of type `BiPartialFunction[C, A, B]` is a partial function from `A` to `B`
+ * whose guards and bodies also receive a context of type `C`, such as a tenant, a locale or a configuration.
+ * <p>
+ * Passing the context as an argument instead of capturing it in lambdas allows a chain to be built
+ * once and shared by every request. `bind` turns the chain into a `PartialFunction[A, B]` for one context.
+ *
+ * @param <C> the type of the context.
+ * @param <A> the type of the input to the function.
+ * @param <B> the type of the result of the function.
+ */
+public interface BiPartialFunction<C, A, B> extends BiFunction<C, A, B> {
+
+    /**
+     * Checks if a value is contained in the function's domain in a context.
+     *
+     * @param c the context.
+     * @param a the value to test.
+     * @return `true`, iff `a` is in the domain of this function in context `c`, `false` otherwise.
+     */
+    Boolean isDefinedAt(C c, A a);
+
+    /**
+     * Applies this partial function to the given argument when it is contained in the function domain.
+     * Applies fallback function where this partial function is not defined.
+     *
+     * @param c    the context.
+     * @param a    the function argument.
+     * @param zero the fallback function.
+     * @return the result of this function or fallback function application.
+     */
+    default B applyOrElse(C c, A a, BiFunction<? super C, ? super A, ? extends B> zero) {
+        if (isDefinedAt(c, a)) {
+            return apply(c, a);
+        } else {
+            return zero.apply(c, a);
+        }
+    }
+
+    /**
+     * Composes this partial function with a fallback partial function which
+     * gets applied where this partial function is not defined.
+     *
+     * @param that the fallback function.
+     * @return a partial function which has as domain the union of the domains
+     * of this partial function and `that`.
+     */
+    @SuppressWarnings("unchecked")
+    default BiPartialFunction<C, A, B> orElse(BiPartialFunction<? super C, ? super A, ? extends B> that) {
+        return new BiPartialFunctionCompanion.OrElse<>(this, (BiPartialFunction<C, A, B>) that);
+    }
+
+    /**
+     * Composes this partial function with a fallback partial function from a given
+     * `isDefinedAt` and `apply` which gets applied where this partial function is not defined.
+     *
+     * @param isDefinedAt Checks if a value is contained in the function's domain.
+     * @param apply       Applies this function to the given context and argument.
+     * @return a partial function which has as domain the union of the domains
+     * of this partial function and another function.
+     */
+    default BiPartialFunction<C, A, B> orElseOf(BiPredicate<C, A> isDefinedAt, BiFunction<C, A, B> apply) {
+        return new BiPartialFunctionCompanion.OrElse<>(this, BiPartialFunctions.of(isDefinedAt, apply));
+    }
+
+    /**
+     * Composes this partial function with a transformation function that
+     * gets applied to results of this partial function.
+     *
+     * @param after the transformation function.
+     * @param <V>   the result type of the transformation function.
+     * @return a partial function with the same domain as this partial function, which maps
+     * arguments `(c, a)` to `after.apply(this.apply(c, a))`.
+     */
+    @Override
+    default <V> BiPartialFunction<C, A, V> andThen(Function<? super B, ? extends V> after) {
+        return new BiPartialFunctionCompanion.AndThen<>(this, after);
+    }
+
+    /**
+     * Turns this partial function into a plain function returning an `Optional` result.
+     *
+     * @return a function that takes `(c, a)` to `Optional.of(this.apply(c, a))` if `this`
+     * is defined for `a` in context `c`, and to `Optional.empty` otherwise.
+     */
+    default BiFunction<C, A, Optional<B>> lift() {
+        return new BiPartialFunctionCompanion.Lifted<>(this);
+    }
+
+    /**
+     * The end mark of BiPartialFunction, indicates the end of BiPartialFunction judgment logic.
+     *
+     * @return BiPartialFunction with end mark.
+     */
+    default BiPartialFunction<C, A, B> end() {
+        return this.orElse(BiPartialFunctionCompanion.empty());
+    }
+
+    /**
+     * When all the judgment logic is not satisfied, return the default value.
+     *
+     * @param b default value.
+     * @return BiPartialFunction with a default end value.
+     */
+    default BiPartialFunction<C, A, B> orEndWith(B b) {
+        return new BiPartialFunctionCompanion.OrElse<>(this, BiPartialFunctions.of((c, a) -> true, (c, a) -> b));
+    }
+
+    /**
+     * Fixes the context of this partial function. The view only holds `this` and `c`, so binding
+     * a shared chain per request allocates a single small object.
+     *
+     * @param c the context.
+     * @return a partial function which maps `a` to `this.apply(c, a)`, with the domain of this function in context `c`.
+     */
+    default PartialFunction<A, B> bind(C c) {
+        return new BiPartialFunctionCompanion.Bound<>(this, c);
+    }
+}
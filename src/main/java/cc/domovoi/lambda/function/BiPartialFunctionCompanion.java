@@ -0,0 +1,253 @@
+package cc.domovoi.lambda.function;
+
+import java.io.Serializable;
+import java.util.Optional;
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+import java.util.function.Function;
+
+/**
+ * Implementations of the combinators of `BiPartialFunction`.
+ * <p>
+ * The fallback marker of `PartialFunctionCompanion` is reused: `checkFallback` returns it for any context and
+ * argument, so `PartialFunctionCompanion.fallbackOccurred` tells whether a `BiPartialFunction` was defined.
+ */
+public class BiPartialFunctionCompanion {
+
+    private static final BiFunction<Object, Object, Object> fallback_bf = (c, a) -> PartialFunctionCompanion.checkFallback();
+
+    @SuppressWarnings("unchecked")
+    public static <B> BiFunction<Object, Object, B> checkFallback() {
+        return (BiFunction<Object, Object, B>) fallback_bf;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <C, A, B> BiPartialFunction<C, A, B> empty() {
+        return (BiPartialFunction<C, A, B>) Empty.INSTANCE;
+    }
+
+    /**
+     * The BiPartialFunction without judgment logic, also used as the end mark.
+     */
+    static final class Empty<C, A, B> implements BiPartialFunction<C, A, B>, Serializable {
+
+        static final Empty<Object, Object, Object> INSTANCE = new Empty<>();
+
+        @Override
+        public Boolean isDefinedAt(C c, A a) {
+            return false;
+        }
+
+        @Override
+        public B apply(C c, A a) {
+            throw new MatchError(a);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public BiPartialFunction<C, A, B> orElse(BiPartialFunction<? super C, ? super A, ? extends B> that) {
+            return (BiPartialFunction<C, A, B>) that;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <V> BiPartialFunction<C, A, V> andThen(Function<? super B, ? extends V> after) {
+            return (BiPartialFunction<C, A, V>) this;
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    /**
+     * Function produced by `BiPartialFunctions#of` method.
+     *
+     * @param <C> the type of the context.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     */
+    public static class Case<C, A, B> implements BiPartialFunction<C, A, B> {
+
+        final BiPredicate<C, A> guard;
+
+        final BiFunction<C, A, B> body;
+
+        public Case(BiPredicate<C, A> guard, BiFunction<C, A, B> body) {
+            this.guard = guard;
+            this.body = body;
+        }
+
+        @Override
+        public Boolean isDefinedAt(C c, A a) {
+            return this.guard.test(c, a);
+        }
+
+        @Override
+        public B apply(C c, A a) {
+            return this.body.apply(c, a);
+        }
+
+        @Override
+        public B applyOrElse(C c, A a, BiFunction<? super C, ? super A, ? extends B> zero) {
+            if (this.guard.test(c, a)) {
+                return this.body.apply(c, a);
+            } else {
+                return zero.apply(c, a);
+            }
+        }
+
+        @Override
+        public <V> BiPartialFunction<C, A, V> andThen(Function<? super B, ? extends V> after) {
+            return new Case<>(this.guard, this.body.andThen(after));
+        }
+    }
+
+    /**
+     * Composite function produced by `BiPartialFunction#orElse` method
+     *
+     * @param <C> the type of the context.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     */
+    public static class OrElse<C, A, B> implements BiPartialFunction<C, A, B>, Serializable {
+
+        private BiPartialFunction<C, A, B> f1;
+
+        private BiPartialFunction<C, A, B> f2;
+
+        public OrElse(BiPartialFunction<C, A, B> f1, BiPartialFunction<C, A, B> f2) {
+            this.f1 = f1;
+            this.f2 = f2;
+        }
+
+        @Override
+        public Boolean isDefinedAt(C c, A a) {
+            return this.f1.isDefinedAt(c, a) || this.f2.isDefinedAt(c, a);
+        }
+
+        @Override
+        public B apply(C c, A a) {
+            return this.f1.applyOrElse(c, a, this.f2);
+        }
+
+        @Override
+        public B applyOrElse(C c, A a, BiFunction<? super C, ? super A, ? extends B> zero) {
+            B z = this.f1.applyOrElse(c, a, checkFallback());
+            if (!PartialFunctionCompanion.fallbackOccurred(z)) {
+                return z;
+            } else {
+                return this.f2.applyOrElse(c, a, zero);
+            }
+        }
+
+        @Override
+        public BiPartialFunction<C, A, B> orElse(BiPartialFunction<? super C, ? super A, ? extends B> that) {
+            return new OrElse<>(this.f1, f2.orElse(that));
+        }
+
+        @Override
+        public <V> BiPartialFunction<C, A, V> andThen(Function<? super B, ? extends V> after) {
+            return new OrElse<>(this.f1.andThen(after), this.f2.andThen(after));
+        }
+    }
+
+    /**
+     * Composite function produced by `BiPartialFunction#andThen` method
+     *
+     * @param <C> the type of the context.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @param <V> the type of output of the after function, and of the
+     *            composed function
+     */
+    public static class AndThen<C, A, B, V> implements BiPartialFunction<C, A, V>, Serializable {
+
+        private BiPartialFunction<C, A, B> pf;
+
+        private Function<? super B, ? extends V> k;
+
+        public AndThen(BiPartialFunction<C, A, B> pf, Function<? super B, ? extends V> k) {
+            this.pf = pf;
+            this.k = k;
+        }
+
+        @Override
+        public Boolean isDefinedAt(C c, A a) {
+            return this.pf.isDefinedAt(c, a);
+        }
+
+        @Override
+        public V apply(C c, A a) {
+            return this.k.apply(this.pf.apply(c, a));
+        }
+
+        @Override
+        public V applyOrElse(C c, A a, BiFunction<? super C, ? super A, ? extends V> zero) {
+            B z = this.pf.applyOrElse(c, a, checkFallback());
+            if (!PartialFunctionCompanion.fallbackOccurred(z)) {
+                return this.k.apply(z);
+            } else {
+                return zero.apply(c, a);
+            }
+        }
+    }
+
+    public static class Lifted<C, A, B> implements BiFunction<C, A, Optional<B>>, Serializable {
+
+        private BiPartialFunction<C, A, B> pf;
+
+        public Lifted(BiPartialFunction<C, A, B> pf) {
+            this.pf = pf;
+        }
+
+        @Override
+        public Optional<B> apply(C c, A a) {
+            B z = this.pf.applyOrElse(c, a, checkFallback());
+            if (!PartialFunctionCompanion.fallbackOccurred(z)) {
+                return Optional.of(z);
+            } else {
+                return Optional.empty();
+            }
+        }
+    }
+
+    /**
+     * View produced by `BiPartialFunction#bind` method, fixing the context of a BiPartialFunction.
+     *
+     * @param <C> the type of the context.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     */
+    public static class Bound<C, A, B> extends AbstractPartialFunction<A, B> {
+
+        private final BiPartialFunction<C, A, B> pf;
+
+        private final C context;
+
+        public Bound(BiPartialFunction<C, A, B> pf, C context) {
+            this.pf = pf;
+            this.context = context;
+        }
+
+        @Override
+        public Boolean isDefinedAt(A a) {
+            return this.pf.isDefinedAt(this.context, a);
+        }
+
+        @Override
+        public B apply(A a) {
+            return this.pf.apply(this.context, a);
+        }
+
+        @Override
+        public B applyOrElse(A a, Function<? super A, ? extends B> zero) {
+            B z = this.pf.applyOrElse(this.context, a, checkFallback());
+            if (!PartialFunctionCompanion.fallbackOccurred(z)) {
+                return z;
+            } else {
+                return zero.apply(a);
+            }
+        }
+    }
+}
@@ -0,0 +1,93 @@
+package cc.domovoi.lambda.function;
+
+import java.util.function.BiFunction;
+import java.util.function.BiPredicate;
+
+/**
+ * This class contains various methods for manipulating BiPartialFunction.
+ */
+public class BiPartialFunctions {
+
+    /**
+     * Create a BiPartialFunction instance without judgment logic.
+     *
+     * @param <C> the type of the context.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A BiPartialFunction instance without judgment logic.
+     */
+    public static <C, A, B> BiPartialFunction<C, A, B> empty() {
+        return BiPartialFunctionCompanion.empty();
+    }
+
+    /**
+     * Create a BiPartialFunction instance.
+     *
+     * @param isDefinedAt Checks if a value is contained in the function's domain in a context.
+     * @param apply       Applies this function to the given context and argument.
+     * @param <C>         the type of the context.
+     * @param <A>         the type of the input to the function.
+     * @param <B>         the type of the result of the function.
+     * @return A BiPartialFunction instance.
+     */
+    public static <C, A, B> BiPartialFunction<C, A, B> of(BiPredicate<C, A> isDefinedAt, BiFunction<C, A, B> apply) {
+        return new BiPartialFunctionCompanion.Case<>(isDefinedAt, apply);
+    }
+
+    /**
+     * Create a BiPartialFunction from a PartialFunction which ignores the context.
+     *
+     * @param pf  A PartialFunction instance.
+     * @param <C> the type of the context.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A BiPartialFunction instance.
+     */
+    public static <C, A, B> BiPartialFunction<C, A, B> from(PartialFunction<A, B> pf) {
+        return new BiPartialFunction<C, A, B>() {
+            @Override
+            public Boolean isDefinedAt(C c, A a) {
+                return pf.isDefinedAt(a);
+            }
+
+            @Override
+            public B apply(C c, A a) {
+                return pf.apply(a);
+            }
+
+            @Override
+            public B applyOrElse(C c, A a, BiFunction<? super C, ? super A, ? extends B> zero) {
+                B z = pf.applyOrElse(a, PartialFunctionCompanion.checkFallback());
+                return PartialFunctionCompanion.fallbackOccurred(z) ? zero.apply(c, a) : z;
+            }
+        };
+    }
+
+    /**
+     * Create a BiPartialFunction instance with end mark.
+     *
+     * @param isDefinedAt Checks if a value is contained in the function's domain in a context.
+     * @param apply       Applies this function to the given context and argument.
+     * @param <C>         the type of the context.
+     * @param <A>         the type of the input to the function.
+     * @param <B>         the type of the result of the function.
+     * @return A BiPartialFunction instance with end mark.
+     */
+    public static <C, A, B> BiPartialFunction<C, A, B> withEnd(BiPredicate<C, A> isDefinedAt, BiFunction<C, A, B> apply) {
+        return of(isDefinedAt, apply).end();
+    }
+
+    /**
+     * Fix the context of a BiPartialFunction.
+     *
+     * @param pf  A BiPartialFunction instance.
+     * @param c   the context.
+     * @param <C> the type of the context.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A PartialFunction instance in context `c`.
+     */
+    public static <C, A, B> PartialFunction<A, B> bind(BiPartialFunction<C, A, B> pf, C c) {
+        return pf.bind(c);
+    }
+}
@@ -0,0 +1,258 @@
+package cc.domovoi.lambda.function;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Objects;
+import java.util.Set;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * A declarative predicate built from field tests (`field op constant`) combined with `and`, `or` and `not`.
+ * <p>
+ * A `Condition` can be used anywhere a `Predicate` is expected, in particular as the guard of
+ * `PartialFunctions.of`. Unlike an opaque lambda, its structure is visible, so `PartialFunctions.compile`
+ * can share identical tests between the cases of a chain and evaluate each of them at most once per input.
+ * <p>
+ * Instances are created through `Conditions`.
+ *
+ * @param <A> the type of the input to the predicate.
+ */
+public abstract class Condition<A> implements Predicate<A> {
+
+    Condition() {
+    }
+
+    /**
+     * Returns a condition that holds when both this condition and `other` hold.
+     *
+     * @param other the other predicate, kept declarative if it is a `Condition`.
+     * @return the conjunction of this condition and `other`.
+     */
+    @Override
+    public Condition<A> and(Predicate<? super A> other) {
+        return new And<>(Arrays.asList(this, Conditions.of(other)));
+    }
+
+    /**
+     * Returns a condition that holds when either this condition or `other` holds.
+     *
+     * @param other the other predicate, kept declarative if it is a `Condition`.
+     * @return the disjunction of this condition and `other`.
+     */
+    @Override
+    public Condition<A> or(Predicate<? super A> other) {
+        return new Or<>(Arrays.asList(this, Conditions.of(other)));
+    }
+
+    /**
+     * Returns a condition that holds when this condition does not hold.
+     *
+     * @return the negation of this condition.
+     */
+    @Override
+    public Condition<A> negate() {
+        return new Not<>(this);
+    }
+
+    /**
+     * The comparison operators of a field test.
+     */
+    public enum Op {
+        EQ, NE, IN, LT, LE, GT, GE, IS_NULL
+    }
+
+    /**
+     * A single test `field op constant`. Two tests are equal when they have the same field name,
+     * operator and constant, which is what lets a compiled network evaluate them only once.
+     *
+     * @param <A> the type of the input to the predicate.
+     */
+    static final class Test<A> extends Condition<A> {
+
+        final String field;
+
+        final Function<? super A, ?> extractor;
+
+        final Op op;
+
+        final Object constant;
+
+        Test(String field, Function<? super A, ?> extractor, Op op, Object constant) {
+            this.field = field;
+            this.extractor = extractor;
+            this.op = op;
+            this.constant = op == Op.IN ? Collections.unmodifiableSet((Set<?>) constant) : constant;
+        }
+
+        @Override
+        public boolean test(A a) {
+            return testValue(extractor.apply(a));
+        }
+
+        @SuppressWarnings("unchecked")
+        boolean testValue(Object v) {
+            switch (op) {
+                case EQ:
+                    return Objects.equals(v, constant);
+                case NE:
+                    return !Objects.equals(v, constant);
+                case IN:
+                    return ((Set<?>) constant).contains(v);
+                case IS_NULL:
+                    return v == null;
+                default:
+                    if (v == null) {
+                        return false;
+                    }
+                    int c = ((Comparable<Object>) v).compareTo(constant);
+                    switch (op) {
+                        case LT:
+                            return c < 0;
+                        case LE:
+                            return c <= 0;
+                        case GT:
+                            return c > 0;
+                        default:
+                            return c >= 0;
+                    }
+            }
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) {
+                return true;
+            }
+            if (!(o instanceof Test)) {
+                return false;
+            }
+            Test<?> that = (Test<?>) o;
+            return field.equals(that.field) && op == that.op && Objects.equals(constant, that.constant);
+        }
+
+        @Override
+        public int hashCode() {
+            return Objects.hash(field, op, constant);
+        }
+
+        @Override
+        public String toString() {
+            return op == Op.IS_NULL ? field + " is null" : field + " " + op + " " + constant;
+        }
+    }
+
+    /**
+     * An arbitrary predicate wrapped as a condition. It is shared by identity only.
+     *
+     * @param <A> the type of the input to the predicate.
+     */
+    static final class Opaque<A> extends Condition<A> {
+
+        final Predicate<? super A> predicate;
+
+        Opaque(Predicate<? super A> predicate) {
+            this.predicate = predicate;
+        }
+
+        @Override
+        public boolean test(A a) {
+            return predicate.test(a);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Opaque && ((Opaque<?>) o).predicate == predicate;
+        }
+
+        @Override
+        public int hashCode() {
+            return System.identityHashCode(predicate);
+        }
+    }
+
+    static final class And<A> extends Condition<A> {
+
+        final Condition<? super A>[] operands;
+
+        @SuppressWarnings("unchecked")
+        And(List<Condition<? super A>> operands) {
+            this.operands = operands.toArray(new Condition[0]);
+        }
+
+        @Override
+        public boolean test(A a) {
+            for (Condition<? super A> c : operands) {
+                if (!c.test(a)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof And && Arrays.equals(operands, ((And<?>) o).operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(operands) + 1;
+        }
+    }
+
+    static final class Or<A> extends Condition<A> {
+
+        final Condition<? super A>[] operands;
+
+        @SuppressWarnings("unchecked")
+        Or(List<Condition<? super A>> operands) {
+            this.operands = operands.toArray(new Condition[0]);
+        }
+
+        @Override
+        public boolean test(A a) {
+            for (Condition<? super A> c : operands) {
+                if (c.test(a)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Or && Arrays.equals(operands, ((Or<?>) o).operands);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * Arrays.hashCode(operands) + 2;
+        }
+    }
+
+    static final class Not<A> extends Condition<A> {
+
+        final Condition<? super A> operand;
+
+        Not(Condition<? super A> operand) {
+            this.operand = operand;
+        }
+
+        @Override
+        public boolean test(A a) {
+            return !operand.test(a);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Not && operand.equals(((Not<?>) o).operand);
+        }
+
+        @Override
+        public int hashCode() {
+            return 31 * operand.hashCode() + 3;
+        }
+    }
+}
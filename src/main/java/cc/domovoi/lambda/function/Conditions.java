@@ -0,0 +1,163 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashSet;
+import java.util.List;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+/**
+ * This class contains various methods for building declarative Condition instances.
+ * <p>
+ * <pre>{@code
+ * Conditions.Field<Order, String> country = Conditions.field("country", Order::getCountry);
+ * Conditions.Field<Order, Integer> amount = Conditions.field("amount", Order::getAmount);
+ * PartialFunction<Order, String> rules =
+ *         PartialFunctions.of(country.eq("JP").and(amount.gt(1000)), o -> "large-jp")
+ *                 .orElseOf(country.in("JP", "CN"), o -> "asia")
+ *                 .end();
+ * PartialFunction<Order, String> compiled = PartialFunctions.compile(rules);
+ * }</pre>
+ */
+public class Conditions {
+
+    /**
+     * Create a named field of the input. Tests are shared by field name, so the same name must
+     * always denote the same extractor.
+     *
+     * @param name      the name of the field.
+     * @param extractor extracts the field value from the input.
+     * @param <A>       the type of the input.
+     * @param <V>       the type of the field value.
+     * @return A Field instance.
+     */
+    public static <A, V> Field<A, V> field(String name, Function<? super A, ? extends V> extractor) {
+        return new Field<>(name, extractor);
+    }
+
+    /**
+     * Wrap a predicate as a Condition. A Condition is returned as is, any other predicate
+     * is treated as an opaque test shared by identity.
+     *
+     * @param p   the predicate.
+     * @param <A> the type of the input.
+     * @return A Condition instance.
+     */
+    @SuppressWarnings("unchecked")
+    public static <A> Condition<A> of(Predicate<? super A> p) {
+        if (p instanceof Condition) {
+            return (Condition<A>) p;
+        } else {
+            return new Condition.Opaque<>(p);
+        }
+    }
+
+    /**
+     * Create a Condition which holds when all the given predicates hold.
+     *
+     * @param ps  the predicates.
+     * @param <A> the type of the input.
+     * @return the conjunction of `ps`.
+     */
+    @SafeVarargs
+    public static <A> Condition<A> all(Predicate<? super A>... ps) {
+        return new Condition.And<>(conditions(ps));
+    }
+
+    /**
+     * Create a Condition which holds when any of the given predicates holds.
+     *
+     * @param ps  the predicates.
+     * @param <A> the type of the input.
+     * @return the disjunction of `ps`.
+     */
+    @SafeVarargs
+    public static <A> Condition<A> any(Predicate<? super A>... ps) {
+        return new Condition.Or<>(conditions(ps));
+    }
+
+    /**
+     * Create a Condition which holds when the given predicate does not hold.
+     *
+     * @param p   the predicate.
+     * @param <A> the type of the input.
+     * @return the negation of `p`.
+     */
+    public static <A> Condition<A> not(Predicate<? super A> p) {
+        return new Condition.Not<>(of(p));
+    }
+
+    @SafeVarargs
+    private static <A> List<Condition<? super A>> conditions(Predicate<? super A>... ps) {
+        List<Condition<? super A>> cs = new ArrayList<>(ps.length);
+        for (Predicate<? super A> p : ps) {
+            cs.add(of(p));
+        }
+        return cs;
+    }
+
+    /**
+     * A named field of the input, the left hand side of field tests.
+     *
+     * @param <A> the type of the input.
+     * @param <V> the type of the field value.
+     */
+    public static final class Field<A, V> {
+
+        private final String name;
+
+        private final Function<? super A, ? extends V> extractor;
+
+        private Field(String name, Function<? super A, ? extends V> extractor) {
+            this.name = name;
+            this.extractor = extractor;
+        }
+
+        public String name() {
+            return name;
+        }
+
+        public Condition<A> eq(V v) {
+            return test(Condition.Op.EQ, v);
+        }
+
+        public Condition<A> ne(V v) {
+            return test(Condition.Op.NE, v);
+        }
+
+        @SafeVarargs
+        public final Condition<A> in(V... vs) {
+            return in(Arrays.asList(vs));
+        }
+
+        public Condition<A> in(Collection<? extends V> vs) {
+            return test(Condition.Op.IN, new HashSet<>(vs));
+        }
+
+        public Condition<A> isNull() {
+            return test(Condition.Op.IS_NULL, null);
+        }
+
+        public Condition<A> lt(V v) {
+            return test(Condition.Op.LT, v);
+        }
+
+        public Condition<A> le(V v) {
+            return test(Condition.Op.LE, v);
+        }
+
+        public Condition<A> gt(V v) {
+            return test(Condition.Op.GT, v);
+        }
+
+        public Condition<A> ge(V v) {
+            return test(Condition.Op.GE, v);
+        }
+
+        private Condition<A> test(Condition.Op op, Object constant) {
+            return new Condition.Test<>(name, extractor, op, constant);
+        }
+    }
+}
@@ -0,0 +1,434 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.Function;
+import java.util.function.Predicate;
+
+import static cc.domovoi.lambda.function.PartialFunctionCompanion.checkFallback;
+import static cc.domovoi.lambda.function.PartialFunctionCompanion.fallbackOccurred;
+
+/**
+ * A chain of cases compiled into a network of shared tests, produced by `PartialFunctions.compile`.
+ * <p>
+ * Every distinct `Condition` (field test, conjunction, disjunction or negation) appearing in the guards
+ * becomes one node of the network, and every distinct field one extraction. While a value is matched,
+ * the result of each node and the value of each field are memoized, so each distinct test runs at most
+ * once per input no matter how many cases repeat it. Equality tests on the same field are resolved
+ * together with a single hash lookup.
+ * <p>
+ * Cases whose guard is not a `Condition` are kept as opaque nodes, and cases which are not built by
+ * `PartialFunctions.of` are evaluated as they are. The first matching case wins, as with `orElse`.
+ *
+ * @param <A> the type of the input to the function.
+ * @param <B> the type of the result of the function.
+ */
+public class DecisionNetwork<A, B> extends AbstractPartialFunction<A, B> {
+
+    private final Node<A>[] guards;
+
+    private final Function<A, B>[] bodies;
+
+    private final PartialFunction<A, B>[] others;
+
+    private final Function<? super A, ?>[] extractors;
+
+    private final Map<Object, Integer>[] equalities;
+
+    private final int nodeCount;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(this::newScratch);
+
+    @SuppressWarnings("unchecked")
+    DecisionNetwork(List<PartialFunction<A, B>> cases) {
+        int n = cases.size();
+        this.guards = new Node[n];
+        this.bodies = new Function[n];
+        this.others = new PartialFunction[n];
+        Builder<A> builder = new Builder<>();
+        for (int i = 0; i < n; i++) {
+            PartialFunction<A, B> pf = cases.get(i);
+            if (pf instanceof PartialFunctionCompanion.Case) {
+                PartialFunctionCompanion.Case<A, B> c = (PartialFunctionCompanion.Case<A, B>) pf;
+                this.guards[i] = builder.node(Conditions.of(c.guard));
+                this.bodies[i] = c.body;
+            } else {
+                this.others[i] = pf;
+            }
+        }
+        this.extractors = builder.extractors.toArray(new Function[0]);
+        this.equalities = builder.equalities.toArray(new Map[0]);
+        this.nodeCount = builder.nodeCount;
+    }
+
+    /**
+     * @return the number of cases in this network.
+     */
+    public int size() {
+        return guards.length;
+    }
+
+    /**
+     * @return the number of distinct tests in this network.
+     */
+    public int nodeCount() {
+        return nodeCount;
+    }
+
+    @Override
+    public Boolean isDefinedAt(A a) {
+        return indexOf(a) >= 0;
+    }
+
+    @Override
+    public B applyOrElse(A a, Function<? super A, ? extends B> zero) {
+        int matched = -1;
+        Scratch s = acquire();
+        try {
+            for (int i = 0; i < guards.length; i++) {
+                if (guards[i] == null) {
+                    B z = others[i].applyOrElse(a, checkFallback());
+                    if (!fallbackOccurred(z)) {
+                        return z;
+                    }
+                } else if (eval(guards[i], a, s)) {
+                    matched = i;
+                    break;
+                }
+            }
+        } finally {
+            release(s);
+        }
+        return matched < 0 ? zero.apply(a) : bodies[matched].apply(a);
+    }
+
+    /**
+     * Finds the first case defined at `a`.
+     *
+     * @param a the value to test.
+     * @return the index of the first matching case, or -1.
+     */
+    int indexOf(A a) {
+        Scratch s = acquire();
+        try {
+            for (int i = 0; i < guards.length; i++) {
+                if (guards[i] == null ? others[i].isDefinedAt(a) : eval(guards[i], a, s)) {
+                    return i;
+                }
+            }
+            return -1;
+        } finally {
+            release(s);
+        }
+    }
+
+    /**
+     * Evaluates every case at `a`, each guard at most once.
+     *
+     * @param a       the value to test.
+     * @param matched if not null, cleared then set at the indices of the matching cases.
+     * @param results if not null, cleared then filled with the results of the matching cases, in order.
+     * @param counts  if not null, incremented at the indices of the matching cases.
+     * @return the number of matching cases.
+     */
+    int matchAll(A a, BitSet matched, List<? super B> results, long[] counts) {
+        if (matched != null) {
+            matched.clear();
+        }
+        if (results != null) {
+            results.clear();
+        }
+        int count = 0;
+        Scratch s = acquire();
+        try {
+            for (int i = 0; i < guards.length; i++) {
+                boolean hit;
+                B z = null;
+                if (guards[i] != null) {
+                    hit = eval(guards[i], a, s);
+                    if (hit && results != null) {
+                        z = bodies[i].apply(a);
+                    }
+                } else if (results != null) {
+                    z = others[i].applyOrElse(a, checkFallback());
+                    hit = !fallbackOccurred(z);
+                } else {
+                    hit = others[i].isDefinedAt(a);
+                }
+                if (hit) {
+                    count++;
+                    if (matched != null) {
+                        matched.set(i);
+                    }
+                    if (results != null) {
+                        results.add(z);
+                    }
+                    if (counts != null) {
+                        counts[i]++;
+                    }
+                }
+            }
+        } finally {
+            release(s);
+        }
+        return count;
+    }
+
+    private boolean eval(Node<A> node, A a, Scratch s) {
+        int id = node.id;
+        if (s.stamps[id] == s.generation) {
+            return s.values[id];
+        }
+        boolean r = node.compute(this, a, s);
+        s.stamps[id] = s.generation;
+        s.values[id] = r;
+        return r;
+    }
+
+    private Object field(int f, A a, Scratch s) {
+        if (s.fieldStamps[f] != s.generation) {
+            s.fieldStamps[f] = s.generation;
+            s.fieldValues[f] = extractors[f].apply(a);
+            s.touched[s.touchedCount++] = f;
+        }
+        return s.fieldValues[f];
+    }
+
+    private int equalityHit(int f, A a, Scratch s) {
+        if (s.equalityStamps[f] != s.generation) {
+            Integer hit = equalities[f].get(field(f, a, s));
+            s.equalityStamps[f] = s.generation;
+            s.equalityHits[f] = hit == null ? -1 : hit;
+        }
+        return s.equalityHits[f];
+    }
+
+    private Scratch acquire() {
+        Scratch s = scratch.get();
+        if (s.inUse) {
+            // re-entered from a guard or an opaque case, use a private memo
+            s = newScratch();
+        }
+        s.inUse = true;
+        if (++s.generation == Integer.MAX_VALUE) {
+            Arrays.fill(s.stamps, 0);
+            Arrays.fill(s.fieldStamps, 0);
+            Arrays.fill(s.equalityStamps, 0);
+            s.generation = 1;
+        }
+        return s;
+    }
+
+    private void release(Scratch s) {
+        for (int i = 0; i < s.touchedCount; i++) {
+            s.fieldValues[s.touched[i]] = null;
+        }
+        s.touchedCount = 0;
+        s.inUse = false;
+    }
+
+    private Scratch newScratch() {
+        return new Scratch(nodeCount, extractors.length);
+    }
+
+    /**
+     * Interns the conditions of the guards into nodes, structurally equal conditions sharing one node.
+     */
+    private static final class Builder<A> {
+
+        private final Map<Condition<? super A>, Node<A>> nodes = new HashMap<>();
+
+        private final Map<String, Integer> fields = new HashMap<>();
+
+        private final List<Function<? super A, ?>> extractors = new ArrayList<>();
+
+        private final List<Map<Object, Integer>> equalities = new ArrayList<>();
+
+        private int nodeCount;
+
+        @SuppressWarnings("unchecked")
+        private Node<A> node(Condition<? super A> c) {
+            Node<A> node = nodes.get(c);
+            if (node != null) {
+                return node;
+            }
+            if (c instanceof Condition.Test) {
+                Condition.Test<A> t = (Condition.Test<A>) c;
+                Integer f = fields.get(t.field);
+                if (f == null) {
+                    f = extractors.size();
+                    fields.put(t.field, f);
+                    extractors.add(t.extractor);
+                    equalities.add(new HashMap<>());
+                }
+                node = new TestNode<>(nodeCount++, f, t);
+                if (t.op == Condition.Op.EQ) {
+                    equalities.get(f).put(t.constant, node.id);
+                }
+            } else if (c instanceof Condition.And) {
+                node = new AndNode<>(nodeCount++, children(((Condition.And<A>) c).operands));
+            } else if (c instanceof Condition.Or) {
+                node = new OrNode<>(nodeCount++, children(((Condition.Or<A>) c).operands));
+            } else if (c instanceof Condition.Not) {
+                node = new NotNode<>(nodeCount++, node(((Condition.Not<A>) c).operand));
+            } else {
+                node = new OpaqueNode<>(nodeCount++, c);
+            }
+            nodes.put(c, node);
+            return node;
+        }
+
+        @SuppressWarnings("unchecked")
+        private Node<A>[] children(Condition<? super A>[] cs) {
+            Node<A>[] children = new Node[cs.length];
+            for (int i = 0; i < cs.length; i++) {
+                children[i] = node(cs[i]);
+            }
+            return children;
+        }
+    }
+
+    /**
+     * Per thread memo of node results and field values. An entry is valid when its stamp
+     * equals the current generation, so nothing needs to be cleared between inputs.
+     */
+    private static final class Scratch {
+
+        private boolean inUse;
+
+        private int generation;
+
+        private final int[] stamps;
+
+        private final boolean[] values;
+
+        private final int[] fieldStamps;
+
+        private final Object[] fieldValues;
+
+        private final int[] equalityStamps;
+
+        private final int[] equalityHits;
+
+        private final int[] touched;
+
+        private int touchedCount;
+
+        private Scratch(int nodes, int fields) {
+            this.stamps = new int[nodes];
+            this.values = new boolean[nodes];
+            this.fieldStamps = new int[fields];
+            this.fieldValues = new Object[fields];
+            this.equalityStamps = new int[fields];
+            this.equalityHits = new int[fields];
+            this.touched = new int[fields];
+        }
+    }
+
+    private abstract static class Node<A> {
+
+        final int id;
+
+        Node(int id) {
+            this.id = id;
+        }
+
+        abstract boolean compute(DecisionNetwork<A, ?> net, A a, Scratch s);
+    }
+
+    private static final class TestNode<A> extends Node<A> {
+
+        private final int field;
+
+        private final Condition.Test<? super A> test;
+
+        TestNode(int id, int field, Condition.Test<? super A> test) {
+            super(id);
+            this.field = field;
+            this.test = test;
+        }
+
+        @Override
+        boolean compute(DecisionNetwork<A, ?> net, A a, Scratch s) {
+            if (test.op == Condition.Op.EQ) {
+                return net.equalityHit(field, a, s) == id;
+            } else {
+                return test.testValue(net.field(field, a, s));
+            }
+        }
+    }
+
+    private static final class OpaqueNode<A> extends Node<A> {
+
+        private final Predicate<? super A> predicate;
+
+        OpaqueNode(int id, Predicate<? super A> predicate) {
+            super(id);
+            this.predicate = predicate;
+        }
+
+        @Override
+        boolean compute(DecisionNetwork<A, ?> net, A a, Scratch s) {
+            return predicate.test(a);
+        }
+    }
+
+    private static final class AndNode<A> extends Node<A> {
+
+        private final Node<A>[] children;
+
+        AndNode(int id, Node<A>[] children) {
+            super(id);
+            this.children = children;
+        }
+
+        @Override
+        boolean compute(DecisionNetwork<A, ?> net, A a, Scratch s) {
+            for (Node<A> child : children) {
+                if (!net.eval(child, a, s)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class OrNode<A> extends Node<A> {
+
+        private final Node<A>[] children;
+
+        OrNode(int id, Node<A>[] children) {
+            super(id);
+            this.children = children;
+        }
+
+        @Override
+        boolean compute(DecisionNetwork<A, ?> net, A a, Scratch s) {
+            for (Node<A> child : children) {
+                if (net.eval(child, a, s)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+    }
+
+    private static final class NotNode<A> extends Node<A> {
+
+        private final Node<A> child;
+
+        NotNode(int id, Node<A> child) {
+            super(id);
+            this.child = child;
+        }
+
+        @Override
+        boolean compute(DecisionNetwork<A, ?> net, A a, Scratch s) {
+            return !net.eval(child, a, s);
+        }
+    }
+}
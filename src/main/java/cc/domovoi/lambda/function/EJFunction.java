@@ -1,5 +1,9 @@
 package cc.domovoi.lambda.function;
 
+import java.time.Duration;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ScheduledExecutorService;
 import java.util.function.Function;
 
 /**
@@ -14,6 +18,39 @@ public interface EJFunction<A, B> extends Function<A, B> {
         return function::apply;
     }
 
+    /**
+     * Create a function which coalesces concurrent calls into calls of a bulk function.
+     * Batches are flushed when they hold `maxBatch` distinct keys, on the calling thread, or `maxDelay` after
+     * their first key, on a timer thread owned by the function.
+     *
+     * @param bulk     the bulk function, mapping a batch of distinct keys to their results.
+     * @param maxBatch the maximum number of distinct keys in a batch.
+     * @param maxDelay the maximum time a key waits for its batch to fill up.
+     * @param <AA>     the type of the input to the function.
+     * @param <BB>     the type of the result of the function.
+     * @return A BatchedFunction instance.
+     */
+    static <AA, BB> BatchedFunction<AA, BB> batched(Function<? super List<AA>, ? extends Map<AA, BB>> bulk, int maxBatch, Duration maxDelay) {
+        return new BatchedFunction<>(bulk, maxBatch, maxDelay.toNanos(), null);
+    }
+
+    /**
+     * Create a function which coalesces concurrent calls into calls of a bulk function,
+     * timed-out batches being processed on the threads of the given executor.
+     *
+     * @param bulk     the bulk function, mapping a batch of distinct keys to their results.
+     * @param maxBatch the maximum number of distinct keys in a batch.
+     * @param maxDelay the maximum time a key waits for its batch to fill up.
+     * @param timer    the executor scheduling timed-out batches and running their bulk calls.
+     * @param <AA>     the type of the input to the function.
+     * @param <BB>     the type of the result of the function.
+     * @return A BatchedFunction instance.
+     */
+    static <AA, BB> BatchedFunction<AA, BB> batched(Function<? super List<AA>, ? extends Map<AA, BB>> bulk, int maxBatch, Duration maxDelay,
+                                                    ScheduledExecutorService timer) {
+        return new BatchedFunction<>(bulk, maxBatch, maxDelay.toNanos(), timer);
+    }
+
     default B applyNull(A a) {
         return null;
     }
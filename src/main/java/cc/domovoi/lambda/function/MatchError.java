@@ -7,11 +7,18 @@ package cc.domovoi.lambda.function;
  */
 public class MatchError extends RuntimeException {
 
+    private static final MatchError PREALLOCATED = new MatchError(null, false, true);
+
     /**
      * Error
      */
     private Object obj;
 
+    /**
+     * Whether this error is shared and does not record the unmatched object
+     */
+    private boolean shared;
+
     /**
      * Constructor
      *
@@ -21,6 +28,48 @@ public class MatchError extends RuntimeException {
         this.obj = obj;
     }
 
+    /**
+     * Constructor
+     *
+     * @param obj                Error
+     * @param writableStackTrace whether the stack trace is filled in, which is the costly part of throwing
+     */
+    protected MatchError(Object obj, boolean writableStackTrace) {
+        this(obj, writableStackTrace, false);
+    }
+
+    private MatchError(Object obj, boolean writableStackTrace, boolean shared) {
+        super(null, null, false, writableStackTrace);
+        this.obj = obj;
+        this.shared = shared;
+    }
+
+    /**
+     * Create a MatchError without stack trace.
+     *
+     * @param obj Error
+     * @return a MatchError without stack trace.
+     */
+    public static MatchError stackless(Object obj) {
+        return new MatchError(obj, false);
+    }
+
+    /**
+     * The preallocated MatchError, without stack trace nor unmatched object, thrown without any allocation.
+     *
+     * @return the preallocated MatchError.
+     */
+    public static MatchError preallocated() {
+        return PREALLOCATED;
+    }
+
+    /**
+     * @return the object which did not match, or `null` for the preallocated MatchError.
+     */
+    public Object getObject() {
+        return obj;
+    }
+
     /**
      * Error message of this MatchError
      *
@@ -28,10 +77,12 @@ public class MatchError extends RuntimeException {
      */
     @Override
     public String getMessage() {
-        String ofClass = "of class " + obj.getClass().getName();
-        if (obj == null) {
+        if (shared) {
+            return "no match";
+        } else if (obj == null) {
             return "null";
         } else {
+            String ofClass = "of class " + obj.getClass().getName();
             try {
                 return obj.toString() + " (" + ofClass + ")";
             } catch (Throwable e) {
@@ -0,0 +1,149 @@
+package cc.domovoi.lambda.function;
+
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * What a chain does with a value none of its cases is defined at, used with `PartialFunction#end(MissPolicy)`.
+ * <p>
+ * Every policy counts the misses it handles. A policy should not be shared between chains whose
+ * misses are to be counted separately, each factory method returns a new instance.
+ *
+ * @param <A> the type of the input to the function.
+ * @param <B> the type of the result of the function.
+ */
+public abstract class MissPolicy<A, B> {
+
+    private final LongAdder misses = new LongAdder();
+
+    /**
+     * Checks if a chain ending with this policy is defined at a value no case is defined at.
+     *
+     * @param a the unmatched value.
+     * @return `true` if this policy produces a result for `a`.
+     */
+    protected abstract boolean isDefinedAt(A a);
+
+    /**
+     * Handles a miss, returning a result or throwing.
+     *
+     * @param a the unmatched value.
+     * @return the result of the chain for `a`.
+     */
+    protected abstract B onMiss(A a);
+
+    /**
+     * @return the number of misses handled by this policy.
+     */
+    public long misses() {
+        return misses.sum();
+    }
+
+    public void resetMisses() {
+        misses.reset();
+    }
+
+    B miss(A a) {
+        misses.increment();
+        return onMiss(a);
+    }
+
+    /**
+     * Throw a new MatchError, with stack trace. This is what `end()` does.
+     *
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A MissPolicy instance.
+     */
+    public static <A, B> MissPolicy<A, B> throwing() {
+        return new Throwing<A, B>() {
+            @Override
+            protected B onMiss(A a) {
+                throw new MatchError(a);
+            }
+        };
+    }
+
+    /**
+     * Throw a new MatchError without stack trace.
+     *
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A MissPolicy instance.
+     */
+    public static <A, B> MissPolicy<A, B> stackless() {
+        return new Throwing<A, B>() {
+            @Override
+            protected B onMiss(A a) {
+                throw MatchError.stackless(a);
+            }
+        };
+    }
+
+    /**
+     * Throw the preallocated MatchError, which allocates nothing but does not tell the unmatched value.
+     *
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A MissPolicy instance.
+     */
+    public static <A, B> MissPolicy<A, B> preallocated() {
+        return new Throwing<A, B>() {
+            @Override
+            protected B onMiss(A a) {
+                throw MatchError.preallocated();
+            }
+        };
+    }
+
+    /**
+     * Return a default value, which may be a sentinel recognized by the caller.
+     *
+     * @param b   the default value.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A MissPolicy instance.
+     */
+    public static <A, B> MissPolicy<A, B> returning(B b) {
+        return new MissPolicy<A, B>() {
+            @Override
+            protected boolean isDefinedAt(A a) {
+                return true;
+            }
+
+            @Override
+            protected B onMiss(A a) {
+                return b;
+            }
+        };
+    }
+
+    /**
+     * Apply a handler. Values the handler is not defined at are still misses of the chain.
+     *
+     * @param handler the handler.
+     * @param <A>     the type of the input to the function.
+     * @param <B>     the type of the result of the function.
+     * @return A MissPolicy instance.
+     */
+    public static <A, B> MissPolicy<A, B> routeTo(PartialFunction<A, B> handler) {
+        return new MissPolicy<A, B>() {
+            @Override
+            protected boolean isDefinedAt(A a) {
+                return handler.isDefinedAt(a);
+            }
+
+            @Override
+            protected B onMiss(A a) {
+                return handler.applyOrElse(a, PartialFunctionCompanion.empty());
+            }
+        };
+    }
+
+    private abstract static class Throwing<A, B> extends MissPolicy<A, B> {
+
+        @Override
+        protected boolean isDefinedAt(A a) {
+            return false;
+        }
+    }
+}
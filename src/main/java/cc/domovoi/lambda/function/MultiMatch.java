@@ -0,0 +1,106 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.stream.Collector;
+
+/**
+ * Evaluation of every case of a chain instead of the first matching one, produced by `PartialFunctions.matchAll`.
+ * <p>
+ * The cases are compiled into a `DecisionNetwork`, so guards built from `Conditions` share their tests
+ * and every guard is evaluated once per input. Matches are reported as a bitset of case indices, in the
+ * order of the chain, and results can be written into a buffer reused across inputs.
+ *
+ * @param <A> the type of the input to the function.
+ * @param <B> the type of the result of the function.
+ */
+public class MultiMatch<A, B> {
+
+    private final DecisionNetwork<A, B> network;
+
+    MultiMatch(List<PartialFunction<A, B>> cases) {
+        List<PartialFunction<A, B>> defined = new ArrayList<>(cases.size());
+        for (PartialFunction<A, B> pf : cases) {
+            if (!(pf instanceof PartialFunctionCompanion.Miss)) {
+                defined.add(pf);
+            }
+        }
+        this.network = new DecisionNetwork<>(defined);
+    }
+
+    /**
+     * @return the number of cases.
+     */
+    public int size() {
+        return network.size();
+    }
+
+    /**
+     * @param a the value to test.
+     * @return the indices of the cases defined at `a`.
+     */
+    public BitSet match(A a) {
+        BitSet matched = new BitSet(size());
+        network.matchAll(a, matched, null, null);
+        return matched;
+    }
+
+    /**
+     * @param a       the value to test.
+     * @param matched cleared then set at the indices of the cases defined at `a`.
+     * @return the number of cases defined at `a`.
+     */
+    public int match(A a, BitSet matched) {
+        return network.matchAll(a, matched, null, null);
+    }
+
+    /**
+     * Applies every case defined at `a`.
+     *
+     * @param a       the function argument.
+     * @param results cleared then filled with the results, in the order of the cases.
+     * @return the number of cases defined at `a`.
+     */
+    public int applyAll(A a, List<? super B> results) {
+        return network.matchAll(a, null, results, null);
+    }
+
+    /**
+     * Applies every case defined at `a`.
+     *
+     * @param a       the function argument.
+     * @param matched cleared then set at the indices of the cases defined at `a`.
+     * @param results cleared then filled with the results, in the order of the cases.
+     * @return the number of cases defined at `a`.
+     */
+    public int applyAll(A a, BitSet matched, List<? super B> results) {
+        return network.matchAll(a, matched, results, null);
+    }
+
+    /**
+     * Increments the counts of the cases defined at `a`.
+     *
+     * @param a      the value to test.
+     * @param counts the counts, indexed by case.
+     * @return the number of cases defined at `a`.
+     */
+    public int count(A a, long[] counts) {
+        return network.matchAll(a, null, null, counts);
+    }
+
+    /**
+     * @return a Collector counting, for each case, the elements it is defined at.
+     */
+    public Collector<A, long[], long[]> counting() {
+        return Collector.of(
+                () -> new long[size()],
+                (counts, a) -> count(a, counts),
+                (left, right) -> {
+                    for (int i = 0; i < left.length; i++) {
+                        left[i] += right[i];
+                    }
+                    return left;
+                });
+    }
+}
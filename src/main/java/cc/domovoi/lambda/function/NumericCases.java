@@ -0,0 +1,501 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * A compiled list of half-open numeric ranges `[lo, hi)`, classifying primitive values by the first range
+ * containing them, without boxing.
+ * <p>
+ * The bounds of all the ranges are sorted into a single array of boundaries, and every segment between two
+ * consecutive boundaries is mapped to the first case covering it. A value is classified by counting the
+ * boundaries lower or equal to it, which is a loop of branch-free comparisons for up to `LINEAR_LIMIT`
+ * boundaries and a binary search above. `NaN` is never matched.
+ * <p>
+ * Bulk methods take a whole input array and write case indices, mapped values or per-case counts,
+ * with `-1` as the index of unmatched values. They first compute the segments of the values in a tight
+ * loop over primitive arrays, which the JIT compiler can unroll and vectorize, then look the results up.
+ */
+public final class NumericCases {
+
+    /**
+     * The largest number of boundaries classified by a linear count instead of a binary search.
+     */
+    public static final int LINEAR_LIMIT = 32;
+
+    /**
+     * The size of the buffer of segment indices used by the bulk methods.
+     */
+    private static final int CHUNK = 1024;
+
+    private final double[] lows;
+
+    private final double[] highs;
+
+    private final double[] boundaries;
+
+    private final long[] longBoundaries;
+
+    private final int[] intBoundaries;
+
+    /**
+     * The case of each segment, or `-1`.
+     */
+    private final int[] table;
+
+    private NumericCases(double[] lows, double[] highs) {
+        this.lows = lows;
+        this.highs = highs;
+        double[] bounds = new double[lows.length * 2];
+        int n = 0;
+        for (int i = 0; i < lows.length; i++) {
+            if (lows[i] != Double.NEGATIVE_INFINITY) {
+                bounds[n++] = lows[i];
+            }
+            if (highs[i] != Double.POSITIVE_INFINITY) {
+                bounds[n++] = highs[i];
+            }
+        }
+        Arrays.sort(bounds, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || bounds[i] != bounds[m - 1]) {
+                bounds[m++] = bounds[i];
+            }
+        }
+        this.boundaries = Arrays.copyOf(bounds, m);
+        this.table = new int[m + 1];
+        for (int s = 0; s <= m; s++) {
+            double from = s == 0 ? Double.NEGATIVE_INFINITY : boundaries[s - 1];
+            double to = s == m ? Double.POSITIVE_INFINITY : boundaries[s];
+            table[s] = -1;
+            for (int i = 0; i < lows.length; i++) {
+                if (lows[i] <= from && to <= highs[i]) {
+                    table[s] = i;
+                    break;
+                }
+            }
+        }
+        // For integral values, x >= b is x >= ceil(b). Boundaries above the range of the type are never
+        // reached and are left out, which keeps the count equal to the count over all boundaries. A boundary
+        // just below the top of int may still round up past it, hence the test on the ceiling; doubles that
+        // close to the top of long are integers already, so the ceiling of any boundary below 2^63 fits.
+        int ml = 0;
+        while (ml < m && boundaries[ml] < 0x1p63) {
+            ml++;
+        }
+        this.longBoundaries = new long[ml];
+        for (int j = 0; j < ml; j++) {
+            longBoundaries[j] = (long) Math.ceil(boundaries[j]);
+        }
+        int mi = 0;
+        while (mi < m && Math.ceil(boundaries[mi]) <= Integer.MAX_VALUE) {
+            mi++;
+        }
+        this.intBoundaries = new int[mi];
+        for (int j = 0; j < mi; j++) {
+            intBoundaries[j] = (int) Math.ceil(boundaries[j]);
+        }
+    }
+
+    /**
+     * @return a Builder of cases, in priority order.
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return the number of cases.
+     */
+    public int size() {
+        return lows.length;
+    }
+
+    /**
+     * @return the number of distinct boundaries of the compiled ranges.
+     */
+    public int boundaryCount() {
+        return boundaries.length;
+    }
+
+    public int classify(int x) {
+        return table[rank(intBoundaries, x)];
+    }
+
+    public int classify(long x) {
+        return table[rank(longBoundaries, x)];
+    }
+
+    /**
+     * @param x the value to classify.
+     * @return the index of the first case containing `x`, or `-1`.
+     */
+    public int classify(double x) {
+        return x != x ? -1 : table[rank(boundaries, x)];
+    }
+
+    /**
+     * Writes the index of the first case containing each value, or `-1`.
+     *
+     * @param in  the values.
+     * @param out the case indices, at least as long as `in`.
+     */
+    public void classify(int[] in, int[] out) {
+        checkLength(in.length, out.length);
+        ranks(in, 0, in.length, out);
+        for (int i = 0; i < in.length; i++) {
+            out[i] = table[out[i]];
+        }
+    }
+
+    public void classify(long[] in, int[] out) {
+        checkLength(in.length, out.length);
+        ranks(in, 0, in.length, out);
+        for (int i = 0; i < in.length; i++) {
+            out[i] = table[out[i]];
+        }
+    }
+
+    public void classify(double[] in, int[] out) {
+        checkLength(in.length, out.length);
+        ranks(in, 0, in.length, out);
+        for (int i = 0; i < in.length; i++) {
+            double x = in[i];
+            out[i] = x != x ? -1 : table[out[i]];
+        }
+    }
+
+    /**
+     * Writes `values[c]` for each value whose first containing case is `c`, or `missValue`.
+     *
+     * @param in        the values.
+     * @param out       the results, at least as long as `in`.
+     * @param values    the result of each case.
+     * @param missValue the result of unmatched values.
+     */
+    public void map(int[] in, long[] out, long[] values, long missValue) {
+        checkLength(in.length, out.length);
+        long[] r = results(values, missValue);
+        int[] s = new int[Math.min(in.length, CHUNK)];
+        for (int from = 0; from < in.length; from += s.length) {
+            int n = Math.min(s.length, in.length - from);
+            ranks(in, from, n, s);
+            for (int i = 0; i < n; i++) {
+                out[from + i] = r[s[i]];
+            }
+        }
+    }
+
+    public void map(long[] in, long[] out, long[] values, long missValue) {
+        checkLength(in.length, out.length);
+        long[] r = results(values, missValue);
+        int[] s = new int[Math.min(in.length, CHUNK)];
+        for (int from = 0; from < in.length; from += s.length) {
+            int n = Math.min(s.length, in.length - from);
+            ranks(in, from, n, s);
+            for (int i = 0; i < n; i++) {
+                out[from + i] = r[s[i]];
+            }
+        }
+    }
+
+    public void map(double[] in, double[] out, double[] values, double missValue) {
+        checkLength(in.length, out.length);
+        if (values.length != size()) {
+            throw new IllegalArgumentException(String.format("Expected %d values, got %d", size(), values.length));
+        }
+        double[] r = new double[table.length];
+        for (int s = 0; s < table.length; s++) {
+            r[s] = table[s] < 0 ? missValue : values[table[s]];
+        }
+        int[] s = new int[Math.min(in.length, CHUNK)];
+        for (int from = 0; from < in.length; from += s.length) {
+            int n = Math.min(s.length, in.length - from);
+            ranks(in, from, n, s);
+            for (int i = 0; i < n; i++) {
+                double x = in[from + i];
+                out[from + i] = x != x ? missValue : r[s[i]];
+            }
+        }
+    }
+
+    /**
+     * Counts the values of which each case is the first containing case.
+     *
+     * @param in the values.
+     * @return the counts, indexed by case. Unmatched values are not counted.
+     */
+    public long[] histogram(int[] in) {
+        long[] segments = new long[table.length];
+        int[] s = new int[Math.min(in.length, CHUNK)];
+        for (int from = 0; from < in.length; from += s.length) {
+            int n = Math.min(s.length, in.length - from);
+            ranks(in, from, n, s);
+            for (int i = 0; i < n; i++) {
+                segments[s[i]]++;
+            }
+        }
+        return fold(segments);
+    }
+
+    public long[] histogram(long[] in) {
+        long[] segments = new long[table.length];
+        int[] s = new int[Math.min(in.length, CHUNK)];
+        for (int from = 0; from < in.length; from += s.length) {
+            int n = Math.min(s.length, in.length - from);
+            ranks(in, from, n, s);
+            for (int i = 0; i < n; i++) {
+                segments[s[i]]++;
+            }
+        }
+        return fold(segments);
+    }
+
+    public long[] histogram(double[] in) {
+        long[] segments = new long[table.length];
+        int[] s = new int[Math.min(in.length, CHUNK)];
+        int nans = 0;
+        for (int from = 0; from < in.length; from += s.length) {
+            int n = Math.min(s.length, in.length - from);
+            ranks(in, from, n, s);
+            for (int i = 0; i < n; i++) {
+                segments[s[i]]++;
+                nans += in[from + i] != in[from + i] ? 1 : 0;
+            }
+        }
+        // NaN compares false to every boundary, so it is counted in the first segment
+        segments[0] -= nans;
+        return fold(segments);
+    }
+
+    private void ranks(int[] in, int from, int n, int[] s) {
+        int[] b = intBoundaries;
+        if (b.length <= LINEAR_LIMIT) {
+            for (int i = 0; i < n; i++) {
+                int x = in[from + i];
+                int r = 0;
+                for (int j = 0; j < b.length; j++) {
+                    r += x >= b[j] ? 1 : 0;
+                }
+                s[i] = r;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                s[i] = search(b, in[from + i]);
+            }
+        }
+    }
+
+    private void ranks(long[] in, int from, int n, int[] s) {
+        long[] b = longBoundaries;
+        if (b.length <= LINEAR_LIMIT) {
+            for (int i = 0; i < n; i++) {
+                long x = in[from + i];
+                int r = 0;
+                for (int j = 0; j < b.length; j++) {
+                    r += x >= b[j] ? 1 : 0;
+                }
+                s[i] = r;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                s[i] = search(b, in[from + i]);
+            }
+        }
+    }
+
+    private void ranks(double[] in, int from, int n, int[] s) {
+        double[] b = boundaries;
+        if (b.length <= LINEAR_LIMIT) {
+            for (int i = 0; i < n; i++) {
+                double x = in[from + i];
+                int r = 0;
+                for (int j = 0; j < b.length; j++) {
+                    r += x >= b[j] ? 1 : 0;
+                }
+                s[i] = r;
+            }
+        } else {
+            for (int i = 0; i < n; i++) {
+                s[i] = search(b, in[from + i]);
+            }
+        }
+    }
+
+    private long[] results(long[] values, long missValue) {
+        if (values.length != size()) {
+            throw new IllegalArgumentException(String.format("Expected %d values, got %d", size(), values.length));
+        }
+        long[] r = new long[table.length];
+        for (int s = 0; s < table.length; s++) {
+            r[s] = table[s] < 0 ? missValue : values[table[s]];
+        }
+        return r;
+    }
+
+    private long[] fold(long[] segments) {
+        long[] counts = new long[size()];
+        for (int s = 0; s < segments.length; s++) {
+            if (table[s] >= 0) {
+                counts[table[s]] += segments[s];
+            }
+        }
+        return counts;
+    }
+
+    private static void checkLength(int in, int out) {
+        if (out < in) {
+            throw new IllegalArgumentException(String.format("Output of length %d is shorter than input of length %d", out, in));
+        }
+    }
+
+    private static int rank(int[] b, int x) {
+        return b.length <= LINEAR_LIMIT ? count(b, x) : search(b, x);
+    }
+
+    private static int rank(long[] b, long x) {
+        return b.length <= LINEAR_LIMIT ? count(b, x) : search(b, x);
+    }
+
+    private static int rank(double[] b, double x) {
+        return b.length <= LINEAR_LIMIT ? count(b, x) : search(b, x);
+    }
+
+    private static int count(int[] b, int x) {
+        int r = 0;
+        for (int j = 0; j < b.length; j++) {
+            r += x >= b[j] ? 1 : 0;
+        }
+        return r;
+    }
+
+    private static int count(long[] b, long x) {
+        int r = 0;
+        for (int j = 0; j < b.length; j++) {
+            r += x >= b[j] ? 1 : 0;
+        }
+        return r;
+    }
+
+    private static int count(double[] b, double x) {
+        int r = 0;
+        for (int j = 0; j < b.length; j++) {
+            r += x >= b[j] ? 1 : 0;
+        }
+        return r;
+    }
+
+    /**
+     * @return the number of boundaries lower or equal to `x`.
+     */
+    private static int search(int[] b, int x) {
+        int lo = 0;
+        int hi = b.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (b[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int search(long[] b, long x) {
+        int lo = 0;
+        int hi = b.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (b[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    private static int search(double[] b, double x) {
+        int lo = 0;
+        int hi = b.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (b[mid] <= x) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder("NumericCases(");
+        for (int i = 0; i < lows.length; i++) {
+            sb.append(i == 0 ? "" : ", ").append('[').append(lows[i]).append(", ").append(highs[i]).append(')');
+        }
+        return sb.append(')').toString();
+    }
+
+    /**
+     * Builder of `NumericCases`, the first added range having the highest priority.
+     */
+    public static final class Builder {
+
+        private final List<double[]> ranges = new ArrayList<>();
+
+        private Builder() {
+        }
+
+        /**
+         * Adds the case `[lo, hi)`.
+         *
+         * @param lo the inclusive lower bound, may be `Double.NEGATIVE_INFINITY`.
+         * @param hi the exclusive upper bound, may be `Double.POSITIVE_INFINITY`.
+         * @return this Builder.
+         */
+        public Builder range(double lo, double hi) {
+            if (Double.isNaN(lo) || Double.isNaN(hi) || !(lo < hi)) {
+                throw new IllegalArgumentException(String.format("Invalid range [%s, %s)", lo, hi));
+            }
+            // -0.0 and 0.0 are the same boundary
+            ranges.add(new double[]{lo + 0.0, hi + 0.0});
+            return this;
+        }
+
+        /**
+         * Adds the case `[lo, +infinity)`.
+         */
+        public Builder atLeast(double lo) {
+            return range(lo, Double.POSITIVE_INFINITY);
+        }
+
+        /**
+         * Adds the case `(-infinity, hi)`.
+         */
+        public Builder below(double hi) {
+            return range(Double.NEGATIVE_INFINITY, hi);
+        }
+
+        /**
+         * Adds a case containing every value but `NaN`.
+         */
+        public Builder any() {
+            return range(Double.NEGATIVE_INFINITY, Double.POSITIVE_INFINITY);
+        }
+
+        public NumericCases build() {
+            double[] lows = new double[ranges.size()];
+            double[] highs = new double[ranges.size()];
+            for (int i = 0; i < lows.length; i++) {
+                lows[i] = ranges.get(i)[0];
+                highs[i] = ranges.get(i)[1];
+            }
+            return new NumericCases(lows, highs);
+        }
+    }
+}
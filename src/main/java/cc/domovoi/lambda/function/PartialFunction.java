@@ -112,6 +112,18 @@ public interface PartialFunction<A, B> extends Function<A, B>, EJFunction<A, B>
         return this.orElse(PartialFunctionCompanion.empty());
     }
 
+    /**
+     * The end mark of PartialFunction with a policy for the values no judgment logic is satisfied by.
+     * The policy can throw a MatchError with or without stack trace, return a default value or
+     * route to a handler, and counts the misses.
+     *
+     * @param policy the miss policy.
+     * @return PartialFunction with end mark.
+     */
+    default PartialFunction<A, B> end(MissPolicy<? super A, ? extends B> policy) {
+        return this.orElse(PartialFunctionCompanion.miss(policy));
+    }
+
     /**
      * Composes this partial function with an action function which
      * gets applied to results of this partial function.
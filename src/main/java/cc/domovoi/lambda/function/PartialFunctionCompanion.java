@@ -1,8 +1,17 @@
 package cc.domovoi.lambda.function;
 
 import java.io.Serializable;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Deque;
+import java.util.List;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
 
 /**
  * A few handy operations which leverage the extra bit of information
@@ -57,47 +66,354 @@ public class PartialFunctionCompanion {
         return (x) -> false;
     }
 
+    @SuppressWarnings("unchecked")
     public static <A, B> PartialFunction<A, B> empty() {
-        return new PartialFunction<A, B>() {
-            @Override
-            public Boolean isDefinedAt(A a) {
-                return false;
-            }
+        return (PartialFunction<A, B>) Empty.INSTANCE;
+    }
+
+    public static <A, B> PartialFunction<A, B> unlifted(Function<A, Optional<B>> f) {
+        if (f instanceof Lifted) {
+            return ((Lifted<A, B>) f).pf;
+        } else {
+            return new Unlifted<>(f);
+        }
+    }
 
-            @Override
-            public B apply(A a) {
-                throw new MatchError(a);
+    /**
+     * Flattens a chain built with `orElse` into its cases, in priority order.
+     * Empty functions, such as the end mark, are dropped since they are never defined.
+     *
+     * @param pf  the chain.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return the cases of `pf`.
+     */
+    public static <A, B> List<PartialFunction<A, B>> cases(PartialFunction<A, B> pf) {
+        List<PartialFunction<A, B>> cases = new ArrayList<>();
+        Deque<PartialFunction<A, B>> stack = new ArrayDeque<>();
+        stack.push(pf);
+        while (!stack.isEmpty()) {
+            PartialFunction<A, B> p = stack.pop();
+            if (p instanceof OrElse) {
+                stack.push(((OrElse<A, B>) p).f2);
+                stack.push(((OrElse<A, B>) p).f1);
+            } else if (!(p instanceof Empty)) {
+                cases.add(p);
             }
+        }
+        return cases;
+    }
 
-            @Override
-            @SuppressWarnings("unchecked")
-            public PartialFunction<A, B> orElse(PartialFunction<? super A, ? extends B> that) {
-                return (PartialFunction<A, B>) that;
+    /**
+     * Compiles a chain built with `orElse` into a `DecisionNetwork`, runs of prefix and suffix
+     * cases being compiled into an `AffixTrie`.
+     *
+     * @param pf  the chain.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return a partial function equivalent to `pf`.
+     */
+    public static <A, B> PartialFunction<A, B> compile(PartialFunction<A, B> pf) {
+        return compileCases(cases(pf), AffixTrie.Mode.FIRST);
+    }
+
+    /**
+     * Compiles a chain built with `orElse`, runs of prefix and suffix cases being dispatched according to `mode`.
+     *
+     * @param pf   the chain.
+     * @param mode the dispatch of runs of prefix and suffix cases.
+     * @param <A>  the type of the input to the function.
+     * @param <B>  the type of the result of the function.
+     * @return the compiled chain.
+     */
+    public static <A, B> PartialFunction<A, B> compile(PartialFunction<A, B> pf, AffixTrie.Mode mode) {
+        return compileCases(cases(pf), mode);
+    }
+
+    static <A, B> PartialFunction<A, B> compileCases(List<PartialFunction<A, B>> cases) {
+        return compileCases(cases, AffixTrie.Mode.FIRST);
+    }
+
+    /**
+     * Compiles flattened cases, in priority order. Runs of at least two adjacent prefix and suffix cases become
+     * an `AffixTrie`, runs of at least two adjacent regular expression cases a `RegexAutomaton`, the other cases
+     * between them a `DecisionNetwork`, and the segments are chained in order.
+     *
+     * @param cases the cases.
+     * @param mode  the dispatch of runs of prefix and suffix cases.
+     * @param <A>   the type of the input to the function.
+     * @param <B>   the type of the result of the function.
+     * @return a partial function trying `cases` in order.
+     */
+    @SuppressWarnings("unchecked")
+    static <A, B> PartialFunction<A, B> compileCases(List<PartialFunction<A, B>> cases, AffixTrie.Mode mode) {
+        int n = cases.size();
+        PartialFunction<A, B> miss = null;
+        if (n > 0 && cases.get(n - 1) instanceof Miss) {
+            // keep the miss policy as the fallback of the compiled chain
+            miss = cases.get(--n);
+        }
+        List<PartialFunction<A, B>> segments = new ArrayList<>();
+        int from = 0;
+        int i = 0;
+        while (i < n) {
+            Class<?> kind = cases.get(i) instanceof AffixCase ? AffixCase.class
+                    : cases.get(i) instanceof RegexCase ? RegexCase.class : null;
+            int end = i + 1;
+            while (kind != null && end < n && kind.isInstance(cases.get(end))) {
+                end++;
             }
+            if (kind != null && end - i >= 2) {
+                if (from < i) {
+                    segments.add(new DecisionNetwork<>(cases.subList(from, i)));
+                }
+                List<?> run = cases.subList(i, end);
+                segments.add(kind == AffixCase.class
+                        ? (PartialFunction<A, B>) new AffixTrie<>((List<AffixCase<B>>) run, mode)
+                        : (PartialFunction<A, B>) new RegexAutomaton<>((List<RegexCase<B>>) run));
+                from = end;
+            }
+            i = end;
+        }
+        if (from < n || segments.isEmpty()) {
+            segments.add(new DecisionNetwork<>(cases.subList(from, n)));
+        }
+        PartialFunction<A, B> compiled = miss;
+        for (int k = segments.size() - 1; k >= 0; k--) {
+            compiled = compiled == null ? segments.get(k) : new OrElse<>(segments.get(k), compiled);
+        }
+        return compiled;
+    }
+
+    @SuppressWarnings("unchecked")
+    public static <A, B> PartialFunction<A, B> miss(MissPolicy<? super A, ? extends B> policy) {
+        return new Miss<>((MissPolicy<A, B>) policy);
+    }
+
+    /**
+     * The PartialFunction without judgment logic, also used as the end mark.
+     */
+    static final class Empty<A, B> implements PartialFunction<A, B>, Serializable {
+
+        static final Empty<Object, Object> INSTANCE = new Empty<>();
+
+        @Override
+        public Boolean isDefinedAt(A a) {
+            return false;
+        }
+
+        @Override
+        public B apply(A a) {
+            throw new MatchError(a);
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public PartialFunction<A, B> orElse(PartialFunction<? super A, ? extends B> that) {
+            return (PartialFunction<A, B>) that;
+        }
+
+        @Override
+        @SuppressWarnings("unchecked")
+        public <V> PartialFunction<A, V> andThen(Function<? super B, ? extends V> after) {
+            return (PartialFunction<A, V>) this;
+        }
+
+        @Override
+        public Function<A, Optional<B>> lift() {
+            return (x) -> Optional.empty();
+        }
+
+        @Override
+        public <U> Function<A, Boolean> runWith(Function<? super B, ? extends U> action) {
+            return constFalse();
+        }
+
+        private Object readResolve() {
+            return INSTANCE;
+        }
+    }
+
+    /**
+     * The end mark produced by `PartialFunction#end(MissPolicy)` method. It hands the values no case
+     * is defined at to its policy when the chain is applied, and leaves them to the caller's fallback
+     * otherwise, so that `lift` and `runWith` do not count nor throw.
+     *
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     */
+    static final class Miss<A, B> implements PartialFunction<A, B> {
+
+        private final MissPolicy<A, B> policy;
+
+        Miss(MissPolicy<A, B> policy) {
+            this.policy = policy;
+        }
+
+        @Override
+        public Boolean isDefinedAt(A a) {
+            return policy.isDefinedAt(a);
+        }
+
+        @Override
+        public B apply(A a) {
+            return policy.miss(a);
+        }
 
-            @Override
-            @SuppressWarnings("unchecked")
-            public <V> PartialFunction<A, V> andThen(Function<? super B, ? extends V> after) {
-                return (PartialFunction<A, V>) this;
+        @Override
+        public B applyOrElse(A a, Function<? super A, ? extends B> zero) {
+            if (zero == Empty.INSTANCE || policy.isDefinedAt(a)) {
+                return policy.miss(a);
+            } else {
+                return zero.apply(a);
             }
+        }
+
+        @Override
+        public <V> PartialFunction<A, V> andThen(Function<? super B, ? extends V> after) {
+            // the misses are still counted by the original policy
+            return new Miss<>(new MissPolicy<A, V>() {
+                @Override
+                protected boolean isDefinedAt(A a) {
+                    return policy.isDefinedAt(a);
+                }
+
+                @Override
+                protected V onMiss(A a) {
+                    return after.apply(policy.miss(a));
+                }
+            });
+        }
+    }
+
+    /**
+     * Function produced by `PartialFunctions#of` method, keeping its guard and body apart
+     * so that compiled chains can share the guards.
+     *
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     */
+    public static class Case<A, B> implements PartialFunction<A, B> {
+
+        final Predicate<A> guard;
+
+        final Function<A, B> body;
+
+        public Case(Predicate<A> guard, Function<A, B> body) {
+            this.guard = guard;
+            this.body = body;
+        }
 
-            @Override
-            public Function<A, Optional<B>> lift() {
-                return (x) -> Optional.empty();
+        @Override
+        public Boolean isDefinedAt(A a) {
+            return this.guard.test(a);
+        }
+
+        @Override
+        public B apply(A a) {
+            return this.body.apply(a);
+        }
+
+        @Override
+        public B applyOrElse(A a, Function<? super A, ? extends B> zero) {
+            if (this.guard.test(a)) {
+                return this.body.apply(a);
+            } else {
+                return zero.apply(a);
             }
+        }
 
-            @Override
-            public <U> Function<A, Boolean> runWith(Function<? super B, ? extends U> action) {
-                return constFalse();
+        @Override
+        public <V> PartialFunction<A, V> andThen(Function<? super B, ? extends V> after) {
+            return new Case<>(this.guard, this.body.andThen(after));
+        }
+    }
+
+    /**
+     * Function produced by `PartialFunctions#onPrefix` and `PartialFunctions#onSuffix` methods, whose body
+     * receives the string and the length of the matched prefix or suffix.
+     *
+     * @param <B> the type of the result of the function.
+     */
+    public static class AffixCase<B> implements PartialFunction<String, B> {
+
+        final boolean suffix;
+
+        final String affix;
+
+        final BiFunction<String, Integer, B> body;
+
+        public AffixCase(boolean suffix, String affix, BiFunction<String, Integer, B> body) {
+            this.suffix = suffix;
+            this.affix = affix;
+            this.body = body;
+        }
+
+        @Override
+        public Boolean isDefinedAt(String s) {
+            return suffix ? s.endsWith(affix) : s.startsWith(affix);
+        }
+
+        @Override
+        public B apply(String s) {
+            return this.body.apply(s, affix.length());
+        }
+
+        @Override
+        public B applyOrElse(String s, Function<? super String, ? extends B> zero) {
+            if (isDefinedAt(s)) {
+                return this.body.apply(s, affix.length());
+            } else {
+                return zero.apply(s);
             }
-        };
+        }
+
+        @Override
+        public <V> PartialFunction<String, V> andThen(Function<? super B, ? extends V> after) {
+            return new AffixCase<>(this.suffix, this.affix, this.body.andThen(after));
+        }
     }
 
-    public static <A, B> PartialFunction<A, B> unlifted(Function<A, Optional<B>> f) {
-        if (f instanceof Lifted) {
-            return ((Lifted<A, B>) f).pf;
-        } else {
-            return new Unlifted<>(f);
+    /**
+     * Function produced by `PartialFunctions#onRegex` methods, defined at the strings entirely matched by
+     * its pattern, whose body receives the match.
+     *
+     * @param <B> the type of the result of the function.
+     */
+    public static class RegexCase<B> implements PartialFunction<String, B> {
+
+        final Pattern pattern;
+
+        final Function<MatchResult, B> body;
+
+        public RegexCase(Pattern pattern, Function<MatchResult, B> body) {
+            this.pattern = pattern;
+            this.body = body;
+        }
+
+        @Override
+        public Boolean isDefinedAt(String s) {
+            return pattern.matcher(s).matches();
+        }
+
+        @Override
+        public B apply(String s) {
+            return applyOrElse(s, PartialFunctionCompanion.<String, B>empty());
+        }
+
+        @Override
+        public B applyOrElse(String s, Function<? super String, ? extends B> zero) {
+            Matcher m = pattern.matcher(s);
+            if (m.matches()) {
+                return this.body.apply(m);
+            } else {
+                return zero.apply(s);
+            }
+        }
+
+        @Override
+        public <V> PartialFunction<String, V> andThen(Function<? super B, ? extends V> after) {
+            return new RegexCase<>(this.pattern, this.body.andThen(after));
         }
     }
 
@@ -2,8 +2,11 @@ package cc.domovoi.lambda.function;
 
 import java.util.Collection;
 import java.util.Optional;
+import java.util.function.BiFunction;
 import java.util.function.Function;
 import java.util.function.Predicate;
+import java.util.regex.MatchResult;
+import java.util.regex.Pattern;
 
 /**
  * This class contains various methods for manipulating PartialFunction.
@@ -31,17 +34,7 @@ public class PartialFunctions {
      * @return A PartialFunction instance.
      */
     public static <A, B> PartialFunction<A, B> of(Predicate<A> isDefinedAt, Function<A, B> apply) {
-        return new PartialFunction<A, B>() {
-            @Override
-            public Boolean isDefinedAt(A a) {
-                return isDefinedAt.test(a);
-            }
-
-            @Override
-            public B apply(A a) {
-                return apply.apply(a);
-            }
-        };
+        return new PartialFunctionCompanion.Case<>(isDefinedAt, apply);
     }
 
     /**
@@ -105,6 +98,97 @@ public class PartialFunctions {
         return fromAll(fs).end();
     }
 
+    /**
+     * Compile a chain of cases built with `orElse` into a decision network.
+     * Guards built from `Conditions` share their tests, so each distinct test runs at most
+     * once per input. The first matching case still wins.
+     *
+     * @param pf  A chain of cases.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A PartialFunction instance equivalent to `pf`.
+     */
+    public static <A, B> PartialFunction<A, B> compile(PartialFunction<A, B> pf) {
+        return PartialFunctionCompanion.compile(pf);
+    }
+
+    /**
+     * Compile a chain of cases built with `orElse`, runs of adjacent prefix and suffix cases being
+     * dispatched according to `mode`.
+     *
+     * @param pf   A chain of cases.
+     * @param mode `FIRST` to keep the priority of `orElse`, `LONGEST` for the longest matching prefix or suffix.
+     * @param <A>  the type of the input to the function.
+     * @param <B>  the type of the result of the function.
+     * @return A compiled PartialFunction instance.
+     */
+    public static <A, B> PartialFunction<A, B> compile(PartialFunction<A, B> pf, AffixTrie.Mode mode) {
+        return PartialFunctionCompanion.compile(pf, mode);
+    }
+
+    /**
+     * Create a PartialFunction defined at the strings starting with `prefix`. Adjacent prefix and suffix
+     * cases of a chain are compiled by `compile` into a trie matched in one pass.
+     *
+     * @param prefix the prefix.
+     * @param apply  Applies this function to the string and the length of `prefix`.
+     * @param <B>    the type of the result of the function.
+     * @return A PartialFunction instance.
+     */
+    public static <B> PartialFunction<String, B> onPrefix(String prefix, BiFunction<String, Integer, B> apply) {
+        return new PartialFunctionCompanion.AffixCase<>(false, prefix, apply);
+    }
+
+    /**
+     * Create a PartialFunction defined at the strings ending with `suffix`.
+     *
+     * @param suffix the suffix.
+     * @param apply  Applies this function to the string and the length of `suffix`.
+     * @param <B>    the type of the result of the function.
+     * @return A PartialFunction instance.
+     */
+    public static <B> PartialFunction<String, B> onSuffix(String suffix, BiFunction<String, Integer, B> apply) {
+        return new PartialFunctionCompanion.AffixCase<>(true, suffix, apply);
+    }
+
+    /**
+     * Create a PartialFunction defined at the strings entirely matched by `regex`. Adjacent regular expression
+     * cases of a chain are compiled by `compile` into one automaton scanning the input once.
+     *
+     * @param regex the regular expression.
+     * @param apply Applies this function to the match, with its capture groups.
+     * @param <B>   the type of the result of the function.
+     * @return A PartialFunction instance.
+     */
+    public static <B> PartialFunction<String, B> onRegex(String regex, Function<MatchResult, B> apply) {
+        return onRegex(Pattern.compile(regex), apply);
+    }
+
+    /**
+     * Create a PartialFunction defined at the strings entirely matched by `pattern`.
+     *
+     * @param pattern the compiled regular expression.
+     * @param apply   Applies this function to the match, with its capture groups.
+     * @param <B>     the type of the result of the function.
+     * @return A PartialFunction instance.
+     */
+    public static <B> PartialFunction<String, B> onRegex(Pattern pattern, Function<MatchResult, B> apply) {
+        return new PartialFunctionCompanion.RegexCase<>(pattern, apply);
+    }
+
+    /**
+     * Create a multi-match evaluation of a chain of cases built with `orElse`, which reports every
+     * case defined at a value instead of the first one.
+     *
+     * @param pf  A chain of cases.
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     * @return A MultiMatch instance.
+     */
+    public static <A, B> MultiMatch<A, B> matchAll(PartialFunction<A, B> pf) {
+        return new MultiMatch<>(PartialFunctionCompanion.cases(pf));
+    }
+
     /**
      * Lift a partial function to normal function.
      *
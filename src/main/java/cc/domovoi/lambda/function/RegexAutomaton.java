@@ -0,0 +1,926 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+import java.util.regex.MatchResult;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A run of regular expression cases compiled into one automaton, produced by `PartialFunctions.compile`
+ * for adjacent cases built with `PartialFunctions.onRegex`.
+ * <p>
+ * The patterns written in the supported subset of the syntax (literals, escapes such as `\d`, `\w` and `\s`,
+ * `.`, character classes with ranges and negation, groups, alternation and greedy or reluctant quantifiers,
+ * without flags) are merged into a single NFA. It is scanned once per input through a DFA built lazily and
+ * cached, whose accepting states tell the first matching case. The cache is cleared once it holds
+ * `MAX_CACHED_STATES` states, keeping the start state and the states it leads to. If it is cleared before
+ * having scanned `MIN_CHARS_PER_STATE` chars per state built, as adversarial inputs can force, it stops
+ * growing for a while: the missing transitions are computed for each char, outside of any lock and without
+ * being cached, until as many chars as a full cache should serve have been scanned. This bounds the work per
+ * char and the memory instead of rebuilding the cache over and over, and caching resumes once the burst is
+ * over. Other patterns, for instance with backreferences, lookarounds or flags, are kept aside and only tried when they come before the case found by the automaton. Inputs containing surrogate
+ * characters are matched pattern by pattern, since the automaton reads `char` values and not code points.
+ * <p>
+ * Only the winning pattern is run again with a `Matcher`, whose capture groups are passed to the body.
+ *
+ * @param <B> the type of the result of the function.
+ */
+public class RegexAutomaton<B> extends AbstractPartialFunction<String, B> {
+
+    /**
+     * The maximum number of DFA states cached before the cache is cleared.
+     */
+    public static final int MAX_CACHED_STATES = 4096;
+
+    /**
+     * The number of chars scanned per state built below which clearing the cache stops caching new states.
+     */
+    public static final int MIN_CHARS_PER_STATE = 10;
+
+    private static final long CACHE_PAYOFF = (long) MIN_CHARS_PER_STATE * MAX_CACHED_STATES;
+
+    /**
+     * The maximum number of NFA states of a pattern, larger patterns are kept aside.
+     */
+    private static final int MAX_PATTERN_STATES = 2000;
+
+    private static final int MAX_REPEAT = 100;
+
+    private final Pattern[] patterns;
+
+    private final Function<MatchResult, B>[] bodies;
+
+    /**
+     * The cases left out of the automaton, in priority order.
+     */
+    private final int[] fallbacks;
+
+    /**
+     * The bounds of the alphabet classes: class `k` holds the chars `c` with `bounds[k - 1] <= c < bounds[k]`.
+     */
+    private final int[] bounds;
+
+    private final int[] latin1Classes;
+
+    private final BitSet[] charSets;
+
+    private final int[] charNext;
+
+    private final int[][] epsilons;
+
+    private final int[] accepts;
+
+    private final int[] startStates;
+
+    private Map<Key, State> states;
+
+    private volatile State start;
+
+    /**
+     * The number of chars scanned since the cache was cleared or stopped growing. The scans only add their
+     * count when they need a transition, so the chars past the last one are not counted.
+     */
+    private final LongAdder scanned = new LongAdder();
+
+    private volatile boolean caching = true;
+
+    private final ThreadLocal<Scratch> scratch = ThreadLocal.withInitial(Scratch::new);
+
+    private final State dead;
+
+    @SuppressWarnings("unchecked")
+    RegexAutomaton(List<PartialFunctionCompanion.RegexCase<B>> cases) {
+        int n = cases.size();
+        this.patterns = new Pattern[n];
+        this.bodies = new Function[n];
+        Node[] trees = new Node[n];
+        List<Integer> aside = new ArrayList<>();
+        List<int[]> intervals = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            patterns[i] = cases.get(i).pattern;
+            bodies[i] = cases.get(i).body;
+            trees[i] = Parser.parse(patterns[i]);
+            if (trees[i] == null || trees[i].weight() > MAX_PATTERN_STATES) {
+                trees[i] = null;
+                aside.add(i);
+            } else {
+                trees[i].collect(intervals);
+            }
+        }
+        this.fallbacks = aside.stream().mapToInt(Integer::intValue).toArray();
+        this.bounds = alphabet(intervals);
+        this.latin1Classes = new int[256];
+        for (int c = 0; c < 256; c++) {
+            latin1Classes[c] = rank(bounds, c);
+        }
+        Nfa nfa = new Nfa();
+        List<Integer> starts = new ArrayList<>();
+        for (int i = 0; i < n; i++) {
+            if (trees[i] != null) {
+                starts.add(trees[i].compile(nfa, nfa.match(i)));
+            }
+        }
+        this.charSets = nfa.sets.toArray(new BitSet[0]);
+        this.charNext = nfa.next.stream().mapToInt(Integer::intValue).toArray();
+        this.epsilons = nfa.epsilons.toArray(new int[0][]);
+        this.accepts = nfa.accepts.stream().mapToInt(Integer::intValue).toArray();
+        this.startStates = starts.stream().mapToInt(Integer::intValue).toArray();
+        this.dead = new State(new int[0], Integer.MAX_VALUE, 0);
+        reset();
+    }
+
+    /**
+     * @return the number of cases.
+     */
+    public int size() {
+        return patterns.length;
+    }
+
+    /**
+     * @return the number of cases matched pattern by pattern instead of by the automaton.
+     */
+    public int fallbackCount() {
+        return fallbacks.length;
+    }
+
+    /**
+     * @return the number of DFA states currently cached.
+     */
+    public synchronized int cachedStateCount() {
+        return states.size();
+    }
+
+    /**
+     * @return false while the cache has stopped growing, see `MIN_CHARS_PER_STATE`.
+     */
+    public boolean isCaching() {
+        return caching;
+    }
+
+    @Override
+    public Boolean isDefinedAt(String s) {
+        return match(s) >= 0;
+    }
+
+    @Override
+    public B applyOrElse(String s, Function<? super String, ? extends B> zero) {
+        int i = match(s);
+        if (i < 0) {
+            return zero.apply(s);
+        }
+        Matcher m = patterns[i].matcher(s);
+        m.matches();
+        return bodies[i].apply(m);
+    }
+
+    /**
+     * @return the index of the first case matching `s`, or -1.
+     */
+    private int match(String s) {
+        int found = scan(s);
+        if (found == -2) {
+            for (int i = 0; i < patterns.length; i++) {
+                if (patterns[i].matcher(s).matches()) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+        // `found` is the first case of the automaton matching `s`, so a fallback after it can only match with
+        // a lower priority, and cannot change the result. The fallbacks before it are tried in priority order.
+        for (int f : fallbacks) {
+            if (f >= found) {
+                break;
+            }
+            if (patterns[f].matcher(s).matches()) {
+                return f;
+            }
+        }
+        return found == Integer.MAX_VALUE ? -1 : found;
+    }
+
+    /**
+     * @return the first case of the automaton matching `s`, `Integer.MAX_VALUE` if none, or -2 if `s`
+     * contains surrogate characters.
+     */
+    private int scan(String s) {
+        State state = start;
+        if (state == dead) {
+            return Integer.MAX_VALUE;
+        }
+        int counted = 0;
+        for (int i = 0; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (Character.isSurrogate(c)) {
+                return -2;
+            }
+            int k = c < 256 ? latin1Classes[c] : rank(bounds, c);
+            State next = state.next[k];
+            if (next == null) {
+                next = step(state, k, i + 1 - counted);
+                counted = i + 1;
+            }
+            if (next == dead) {
+                return Integer.MAX_VALUE;
+            }
+            state = next;
+        }
+        return state.accept;
+    }
+
+    /**
+     * @param chars the number of chars the scan went through since its previous call.
+     * @return the state `state` leads to on alphabet class `k`.
+     */
+    private State step(State state, int k, int chars) {
+        scanned.add(chars);
+        if (!caching) {
+            if (scanned.sum() < CACHE_PAYOFF) {
+                return transition(state, k, false);
+            }
+            synchronized (this) {
+                if (!caching) {
+                    scanned.reset();
+                    caching = true;
+                }
+            }
+        }
+        return cachedStep(state, k);
+    }
+
+    private synchronized State cachedStep(State state, int k) {
+        State next = state.next[k];
+        if (next != null) {
+            return next;
+        } else if (!caching) {
+            return transition(state, k, false);
+        }
+        next = transition(state, k, true);
+        if (states.size() > MAX_CACHED_STATES) {
+            boolean paidOff = scanned.sum() >= CACHE_PAYOFF;
+            reset();
+            caching = paidOff;
+        } else {
+            state.next[k] = next;
+        }
+        return next;
+    }
+
+    private synchronized void reset() {
+        State previous = start;
+        states = new HashMap<>();
+        scanned.reset();
+        if (previous == null) {
+            Scratch scratch = this.scratch.get();
+            for (int q : startStates) {
+                scratch.targets.set(q);
+            }
+            start = state(scratch, true);
+            return;
+        }
+        if (previous == dead) {
+            return;
+        }
+        // Keep the start state and its transitions. The transitions of the states it leads to are dropped,
+        // which leaves the other states reachable from the scans in progress only.
+        states.put(new Key(previous.nfa), previous);
+        for (State next : previous.next) {
+            if (next != null && next != dead && states.putIfAbsent(new Key(next.nfa), next) == null) {
+                Arrays.fill(next.next, null);
+            }
+        }
+    }
+
+    /**
+     * @param cached true to look the state up in the cache, and intern it there, which requires the lock.
+     */
+    private State transition(State state, int k, boolean cached) {
+        Scratch scratch = this.scratch.get();
+        for (int q : state.nfa) {
+            if (charSets[q] != null && charSets[q].get(k)) {
+                scratch.targets.set(charNext[q]);
+            }
+        }
+        return state(scratch, cached);
+    }
+
+    /**
+     * Returns the DFA state of the epsilon closure of `scratch.targets`, which is cleared. The state is
+     * interned in the cache if `cached` is true, or else built afresh.
+     */
+    private State state(Scratch scratch, boolean cached) {
+        BitSet targets = scratch.targets;
+        if (targets.isEmpty()) {
+            return dead;
+        }
+        BitSet closure = scratch.closure;
+        int top = 0;
+        for (int q = targets.nextSetBit(0); q >= 0; q = targets.nextSetBit(q + 1)) {
+            closure.set(q);
+            top = scratch.push(top, q);
+        }
+        targets.clear();
+        while (top > 0) {
+            int[] outs = epsilons[scratch.stack[--top]];
+            if (outs != null) {
+                for (int q : outs) {
+                    if (!closure.get(q)) {
+                        closure.set(q);
+                        top = scratch.push(top, q);
+                    }
+                }
+            }
+        }
+        int accept = Integer.MAX_VALUE;
+        int size = 0;
+        int[] nfa = new int[closure.cardinality()];
+        for (int q = closure.nextSetBit(0); q >= 0; q = closure.nextSetBit(q + 1)) {
+            if (epsilons[q] == null) {
+                nfa[size++] = q;
+                if (accepts[q] >= 0) {
+                    accept = Math.min(accept, accepts[q]);
+                }
+            }
+        }
+        closure.clear();
+        if (size == 0) {
+            return dead;
+        }
+        Key key = new Key(Arrays.copyOf(nfa, size));
+        State state = cached ? states.get(key) : null;
+        if (state == null) {
+            state = new State(key.nfa, accept, bounds.length + 1);
+            if (cached) {
+                states.put(key, state);
+            }
+        }
+        return state;
+    }
+
+    private static int[] alphabet(List<int[]> intervals) {
+        int[] all = new int[intervals.size() * 2];
+        int n = 0;
+        for (int[] range : intervals) {
+            all[n++] = range[0];
+            all[n++] = range[1] + 1;
+        }
+        Arrays.sort(all, 0, n);
+        int m = 0;
+        for (int i = 0; i < n; i++) {
+            if (m == 0 || all[i] != all[m - 1]) {
+                all[m++] = all[i];
+            }
+        }
+        return Arrays.copyOf(all, m);
+    }
+
+    /**
+     * @return the number of bounds lower or equal to `c`, which is the alphabet class of `c`.
+     */
+    private static int rank(int[] bounds, int c) {
+        int lo = 0;
+        int hi = bounds.length;
+        while (lo < hi) {
+            int mid = (lo + hi) >>> 1;
+            if (bounds[mid] <= c) {
+                lo = mid + 1;
+            } else {
+                hi = mid;
+            }
+        }
+        return lo;
+    }
+
+    /**
+     * A DFA state: a set of NFA states which are char or match states, the first case accepted there,
+     * and the transitions computed so far, indexed by alphabet class.
+     */
+    private static final class State {
+
+        private final int[] nfa;
+
+        private final int accept;
+
+        private final State[] next;
+
+        private State(int[] nfa, int accept, int classes) {
+            this.nfa = nfa;
+            this.accept = accept;
+            this.next = new State[classes];
+        }
+    }
+
+    /**
+     * The sets and stack of a thread computing epsilon closures, kept to avoid allocating them for each
+     * transition. The stack grows with the closures.
+     */
+    private static final class Scratch {
+
+        private final BitSet targets = new BitSet();
+
+        private final BitSet closure = new BitSet();
+
+        private int[] stack = new int[16];
+
+        private int push(int top, int q) {
+            if (top == stack.length) {
+                stack = Arrays.copyOf(stack, top * 2);
+            }
+            stack[top] = q;
+            return top + 1;
+        }
+    }
+
+    private static final class Key {
+
+        private final int[] nfa;
+
+        private final int hash;
+
+        private Key(int[] nfa) {
+            this.nfa = nfa;
+            this.hash = Arrays.hashCode(nfa);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o instanceof Key && Arrays.equals(nfa, ((Key) o).nfa);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+
+    /**
+     * The NFA under construction. A state is either a char state, with a set of alphabet classes and one
+     * successor, an epsilon state, with several successors, or a match state, accepting one case.
+     */
+    private final class Nfa {
+
+        private final List<BitSet> sets = new ArrayList<>();
+
+        private final List<Integer> next = new ArrayList<>();
+
+        private final List<int[]> epsilons = new ArrayList<>();
+
+        private final List<Integer> accepts = new ArrayList<>();
+
+        private int add(BitSet set, int successor, int[] outs, int accept) {
+            sets.add(set);
+            next.add(successor);
+            epsilons.add(outs);
+            accepts.add(accept);
+            return sets.size() - 1;
+        }
+
+        int chars(int[] ranges, int successor) {
+            BitSet set = new BitSet();
+            for (int i = 0; i < ranges.length; i += 2) {
+                set.set(rank(bounds, ranges[i]), rank(bounds, ranges[i + 1]) + 1);
+            }
+            return add(set, successor, null, -1);
+        }
+
+        int epsilon(int... outs) {
+            return add(null, -1, outs, -1);
+        }
+
+        void setEpsilon(int state, int... outs) {
+            epsilons.set(state, outs);
+        }
+
+        int match(int accept) {
+            return add(null, -1, null, accept);
+        }
+    }
+
+    /**
+     * A node of the syntax tree of a supported pattern, compiled backwards: `compile` returns the start
+     * of the states matching this node and then continuing at `next`.
+     */
+    private abstract static class Node {
+
+        abstract int compile(RegexAutomaton<?>.Nfa nfa, int next);
+
+        abstract int weight();
+
+        abstract void collect(List<int[]> intervals);
+    }
+
+    private static final class Chars extends Node {
+
+        private final int[] ranges;
+
+        private Chars(int[] ranges) {
+            this.ranges = ranges;
+        }
+
+        @Override
+        int compile(RegexAutomaton<?>.Nfa nfa, int next) {
+            return nfa.chars(ranges, next);
+        }
+
+        @Override
+        int weight() {
+            return 1;
+        }
+
+        @Override
+        void collect(List<int[]> intervals) {
+            for (int i = 0; i < ranges.length; i += 2) {
+                intervals.add(new int[]{ranges[i], ranges[i + 1]});
+            }
+        }
+    }
+
+    private static final class Sequence extends Node {
+
+        private final List<Node> items;
+
+        private Sequence(List<Node> items) {
+            this.items = items;
+        }
+
+        @Override
+        int compile(RegexAutomaton<?>.Nfa nfa, int next) {
+            int state = next;
+            for (int i = items.size() - 1; i >= 0; i--) {
+                state = items.get(i).compile(nfa, state);
+            }
+            return state;
+        }
+
+        @Override
+        int weight() {
+            return items.stream().mapToInt(Node::weight).sum();
+        }
+
+        @Override
+        void collect(List<int[]> intervals) {
+            items.forEach(item -> item.collect(intervals));
+        }
+    }
+
+    private static final class Alternation extends Node {
+
+        private final List<Node> branches;
+
+        private Alternation(List<Node> branches) {
+            this.branches = branches;
+        }
+
+        @Override
+        int compile(RegexAutomaton<?>.Nfa nfa, int next) {
+            int[] outs = new int[branches.size()];
+            for (int i = 0; i < outs.length; i++) {
+                outs[i] = branches.get(i).compile(nfa, next);
+            }
+            return nfa.epsilon(outs);
+        }
+
+        @Override
+        int weight() {
+            return 1 + branches.stream().mapToInt(Node::weight).sum();
+        }
+
+        @Override
+        void collect(List<int[]> intervals) {
+            branches.forEach(branch -> branch.collect(intervals));
+        }
+    }
+
+    private static final class Repeat extends Node {
+
+        private final Node item;
+
+        private final int min;
+
+        /**
+         * The maximum number of repetitions, or -1 if unbounded.
+         */
+        private final int max;
+
+        private Repeat(Node item, int min, int max) {
+            this.item = item;
+            this.min = min;
+            this.max = max;
+        }
+
+        @Override
+        int compile(RegexAutomaton<?>.Nfa nfa, int next) {
+            int state = next;
+            if (max < 0) {
+                int loop = nfa.epsilon();
+                nfa.setEpsilon(loop, item.compile(nfa, loop), next);
+                state = loop;
+            } else {
+                for (int i = min; i < max; i++) {
+                    state = nfa.epsilon(item.compile(nfa, state), state);
+                }
+            }
+            for (int i = 0; i < min; i++) {
+                state = item.compile(nfa, state);
+            }
+            return state;
+        }
+
+        @Override
+        int weight() {
+            return (Math.max(min, max) + 1) * (item.weight() + 1);
+        }
+
+        @Override
+        void collect(List<int[]> intervals) {
+            item.collect(intervals);
+        }
+    }
+
+    /**
+     * Parser of the supported subset of the `Pattern` syntax, returning `null` for anything else.
+     */
+    private static final class Parser {
+
+        private static final int[] DIGIT = {'0', '9'};
+
+        private static final int[] WORD = {'0', '9', 'A', 'Z', '_', '_', 'a', 'z'};
+
+        private static final int[] SPACE = {'\t', '\r', ' ', ' '};
+
+        private static final int[] DOT = complement(new int[]{'\n', '\n', '\r', '\r', 0x85, 0x85, 0x2028, 0x2029});
+
+        /**
+         * Thrown on unsupported syntax, without stack trace.
+         */
+        private static final RuntimeException UNSUPPORTED = new RuntimeException("unsupported", null, false, false) {
+        };
+
+        private final String regex;
+
+        private int pos;
+
+        private final int end;
+
+        private Parser(String regex, int pos, int end) {
+            this.regex = regex;
+            this.pos = pos;
+            this.end = end;
+        }
+
+        static Node parse(Pattern pattern) {
+            if (pattern.flags() != 0) {
+                return null;
+            }
+            String regex = pattern.pattern();
+            int from = 0;
+            int to = regex.length();
+            // `^` at the start and `$` at the end always hold for a whole match
+            if (to > 0 && regex.charAt(0) == '^') {
+                from = 1;
+            }
+            if (to > from && regex.charAt(to - 1) == '$') {
+                int escapes = 0;
+                while (to - 2 - escapes >= from && regex.charAt(to - 2 - escapes) == '\\') {
+                    escapes++;
+                }
+                if (escapes % 2 == 0) {
+                    to--;
+                }
+            }
+            try {
+                Parser parser = new Parser(regex, from, to);
+                Node node = parser.alternation();
+                return parser.pos == to ? node : null;
+            } catch (RuntimeException e) {
+                if (e == UNSUPPORTED || e instanceof IndexOutOfBoundsException || e instanceof NumberFormatException) {
+                    return null;
+                }
+                throw e;
+            }
+        }
+
+        private Node alternation() {
+            List<Node> branches = new ArrayList<>();
+            branches.add(sequence());
+            while (pos < end && regex.charAt(pos) == '|') {
+                pos++;
+                branches.add(sequence());
+            }
+            return branches.size() == 1 ? branches.get(0) : new Alternation(branches);
+        }
+
+        private Node sequence() {
+            List<Node> items = new ArrayList<>();
+            while (pos < end && regex.charAt(pos) != '|' && regex.charAt(pos) != ')') {
+                items.add(quantified(atom()));
+            }
+            return items.size() == 1 ? items.get(0) : new Sequence(items);
+        }
+
+        private Node quantified(Node atom) {
+            if (pos >= end) {
+                return atom;
+            }
+            int min;
+            int max;
+            char c = regex.charAt(pos);
+            if (c == '*') {
+                min = 0;
+                max = -1;
+            } else if (c == '+') {
+                min = 1;
+                max = -1;
+            } else if (c == '?') {
+                min = 0;
+                max = 1;
+            } else if (c == '{') {
+                int close = regex.indexOf('}', pos);
+                if (close < 0 || close >= end) {
+                    throw UNSUPPORTED;
+                }
+                String[] range = regex.substring(pos + 1, close).split(",", -1);
+                if (range.length > 2) {
+                    throw UNSUPPORTED;
+                }
+                min = Integer.parseInt(range[0]);
+                max = range.length == 1 ? min : range[1].isEmpty() ? -1 : Integer.parseInt(range[1]);
+                if (min > MAX_REPEAT || max > MAX_REPEAT || (max >= 0 && max < min)) {
+                    throw UNSUPPORTED;
+                }
+                pos = close;
+            } else {
+                return atom;
+            }
+            pos++;
+            if (pos < end && regex.charAt(pos) == '+') {
+                // possessive quantifiers change which strings match
+                throw UNSUPPORTED;
+            } else if (pos < end && regex.charAt(pos) == '?') {
+                pos++;
+            }
+            return new Repeat(atom, min, max);
+        }
+
+        private Node atom() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case '(':
+                    if (regex.startsWith("?:", pos)) {
+                        pos += 2;
+                    } else if (regex.startsWith("?<", pos) && pos + 2 < end && Character.isLetter(regex.charAt(pos + 2))) {
+                        pos = regex.indexOf('>', pos) + 1;
+                    } else if (regex.startsWith("?", pos)) {
+                        throw UNSUPPORTED;
+                    }
+                    Node inner = alternation();
+                    if (pos >= end || regex.charAt(pos) != ')') {
+                        throw UNSUPPORTED;
+                    }
+                    pos++;
+                    return inner;
+                case '[':
+                    return new Chars(characterClass());
+                case '.':
+                    return new Chars(DOT);
+                case '\\':
+                    return new Chars(escape());
+                case '^':
+                case '$':
+                case '*':
+                case '+':
+                case '?':
+                case '{':
+                    throw UNSUPPORTED;
+                default:
+                    return new Chars(single(c));
+            }
+        }
+
+        private int[] characterClass() {
+            boolean negated = pos < end && regex.charAt(pos) == '^';
+            if (negated) {
+                pos++;
+            }
+            if (regex.charAt(pos) == ']') {
+                throw UNSUPPORTED;
+            }
+            List<int[]> items = new ArrayList<>();
+            while (regex.charAt(pos) != ']') {
+                char c = regex.charAt(pos++);
+                if (c == '[' || (c == '&' && regex.charAt(pos) == '&')) {
+                    throw UNSUPPORTED;
+                }
+                int[] item = c == '\\' ? escape() : single(c);
+                if (regex.charAt(pos) == '-' && regex.charAt(pos + 1) != ']') {
+                    pos++;
+                    char d = regex.charAt(pos++);
+                    int[] upper = d == '\\' ? escape() : single(d);
+                    if (item.length != 2 || upper.length != 2 || item[0] != item[1] || upper[0] != upper[1] || item[0] > upper[0]) {
+                        throw UNSUPPORTED;
+                    }
+                    item = new int[]{item[0], upper[0]};
+                }
+                items.add(item);
+            }
+            pos++;
+            int[] ranges = union(items);
+            return negated ? complement(ranges) : ranges;
+        }
+
+        private int[] escape() {
+            char c = regex.charAt(pos++);
+            switch (c) {
+                case 'd':
+                    return DIGIT;
+                case 'D':
+                    return complement(DIGIT);
+                case 'w':
+                    return WORD;
+                case 'W':
+                    return complement(WORD);
+                case 's':
+                    return SPACE;
+                case 'S':
+                    return complement(SPACE);
+                case 't':
+                    return single('\t');
+                case 'n':
+                    return single('\n');
+                case 'r':
+                    return single('\r');
+                case 'f':
+                    return single('\f');
+                case 'a':
+                    return single('\u0007');
+                case 'e':
+                    return single('\u001B');
+                case 'x':
+                    pos += 2;
+                    return single((char) Integer.parseInt(regex.substring(pos - 2, pos), 16));
+                case 'u':
+                    pos += 4;
+                    return single((char) Integer.parseInt(regex.substring(pos - 4, pos), 16));
+                default:
+                    if (Character.isLetterOrDigit(c)) {
+                        // backreferences, boundaries, anchors, properties and quoting
+                        throw UNSUPPORTED;
+                    }
+                    return single(c);
+            }
+        }
+
+        private static int[] single(char c) {
+            if (Character.isSurrogate(c)) {
+                throw UNSUPPORTED;
+            }
+            return new int[]{c, c};
+        }
+
+        private static int[] union(List<int[]> items) {
+            List<int[]> ranges = new ArrayList<>();
+            for (int[] item : items) {
+                for (int i = 0; i < item.length; i += 2) {
+                    ranges.add(new int[]{item[i], item[i + 1]});
+                }
+            }
+            ranges.sort((a, b) -> Integer.compare(a[0], b[0]));
+            int[] merged = new int[ranges.size() * 2];
+            int n = 0;
+            for (int[] range : ranges) {
+                if (n > 0 && range[0] <= merged[n - 1] + 1) {
+                    merged[n - 1] = Math.max(merged[n - 1], range[1]);
+                } else {
+                    merged[n++] = range[0];
+                    merged[n++] = range[1];
+                }
+            }
+            return Arrays.copyOf(merged, n);
+        }
+
+        private static int[] complement(int[] ranges) {
+            int[] result = new int[ranges.length + 2];
+            int n = 0;
+            int from = 0;
+            for (int i = 0; i < ranges.length; i += 2) {
+                if (ranges[i] > from) {
+                    result[n++] = from;
+                    result[n++] = ranges[i] - 1;
+                }
+                from = ranges[i + 1] + 1;
+            }
+            if (from <= Character.MAX_VALUE) {
+                result[n++] = from;
+                result[n++] = Character.MAX_VALUE;
+            }
+            return Arrays.copyOf(result, n);
+        }
+    }
+}
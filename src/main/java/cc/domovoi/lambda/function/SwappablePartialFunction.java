@@ -0,0 +1,415 @@
+package cc.domovoi.lambda.function;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Objects;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.function.Function;
+import java.util.function.UnaryOperator;
+
+import static cc.domovoi.lambda.function.PartialFunctionCompanion.checkFallback;
+import static cc.domovoi.lambda.function.PartialFunctionCompanion.fallbackOccurred;
+
+/**
+ * A PartialFunction whose cases can be edited while it is being applied.
+ * <p>
+ * The cases, identified by ids, live in an immutable `Snapshot` behind an atomic reference. Readers
+ * take the current snapshot with a single volatile read and never block nor see a half-built chain.
+ * Each edit produces a new snapshot with the next version number: cases are kept in compiled chunks
+ * of at most {@value #CHUNK_SIZE} cases, and only the chunk touched by an edit is rebuilt, all the
+ * others being shared with the previous version. A chunk left small by removals is merged into a
+ * neighbour with room for it.
+ * <p>
+ * Edits are serialized, so every chunk they touch is compiled exactly once; readers never wait for them.
+ * <p>
+ * Use `snapshot()` when `isDefinedAt` and `apply` must observe the same version.
+ *
+ * @param <A> the type of the input to the function.
+ * @param <B> the type of the result of the function.
+ */
+public class SwappablePartialFunction<A, B> extends AbstractPartialFunction<A, B> {
+
+    /**
+     * The maximum number of cases compiled together.
+     */
+    public static final int CHUNK_SIZE = 32;
+
+    private final AtomicReference<Snapshot<A, B>> current = new AtomicReference<>(Snapshot.empty());
+
+    private final List<Listener<A, B>> listeners = new CopyOnWriteArrayList<>();
+
+    private final Object editLock = new Object();
+
+    private final Object notifyLock = new Object();
+
+    /**
+     * The version of the last snapshot passed to the listeners, guarded by `notifyLock`.
+     */
+    private long notified;
+
+    /**
+     * @return the current snapshot.
+     */
+    public Snapshot<A, B> snapshot() {
+        return current.get();
+    }
+
+    /**
+     * @return the version of the current snapshot.
+     */
+    public long version() {
+        return current.get().version();
+    }
+
+    /**
+     * Appends a case with the lowest priority.
+     *
+     * @param id the id of the case.
+     * @param pf the case.
+     * @return the new snapshot.
+     * @throws IllegalArgumentException if a case with the same id exists.
+     */
+    public Snapshot<A, B> add(Object id, PartialFunction<A, B> pf) {
+        Objects.requireNonNull(pf, "case cannot be null");
+        return swap(s -> s.adding(Collections.singletonMap(id, pf)));
+    }
+
+    /**
+     * Appends several cases in one version, in the iteration order of `cases`.
+     *
+     * @param cases the cases by id.
+     * @return the new snapshot.
+     * @throws IllegalArgumentException if a case with one of the ids exists.
+     */
+    public Snapshot<A, B> addAll(Map<?, ? extends PartialFunction<A, B>> cases) {
+        cases.values().forEach(pf -> Objects.requireNonNull(pf, "case cannot be null"));
+        return swap(s -> s.adding(cases));
+    }
+
+    /**
+     * Removes a case. Nothing happens if there is no such case.
+     *
+     * @param id the id of the case.
+     * @return the new snapshot, or the current one if nothing was removed.
+     */
+    public Snapshot<A, B> remove(Object id) {
+        return swap(s -> s.replacing(id, null, false));
+    }
+
+    /**
+     * Replaces a case, keeping its priority.
+     *
+     * @param id the id of the case.
+     * @param pf the new case.
+     * @return the new snapshot.
+     * @throws NoSuchElementException if there is no such case.
+     */
+    public Snapshot<A, B> replace(Object id, PartialFunction<A, B> pf) {
+        Objects.requireNonNull(pf, "case cannot be null");
+        return swap(s -> s.replacing(id, pf, true));
+    }
+
+    /**
+     * Registers a listener notified after each version change, on the thread which made the edit.
+     * The edit has taken effect by then: exceptions thrown by listeners do not prevent the others from
+     * being notified, and are passed to the uncaught exception handler of the thread once all are.
+     * Notifications are serialized and in version order: when concurrent edits complete out of order,
+     * the listeners are not notified of a version older than one they were already notified of.
+     *
+     * @param listener the listener.
+     */
+    public void addListener(Listener<A, B> listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener<A, B> listener) {
+        listeners.remove(listener);
+    }
+
+    @Override
+    public Boolean isDefinedAt(A a) {
+        return current.get().isDefinedAt(a);
+    }
+
+    @Override
+    public B applyOrElse(A a, Function<? super A, ? extends B> zero) {
+        return current.get().applyOrElse(a, zero);
+    }
+
+    private Snapshot<A, B> swap(UnaryOperator<Snapshot<A, B>> edit) {
+        Snapshot<A, B> previous;
+        Snapshot<A, B> next;
+        synchronized (editLock) {
+            previous = current.get();
+            next = edit.apply(previous);
+            if (next == previous) {
+                return previous;
+            }
+            current.set(next);
+        }
+        RuntimeException failure = null;
+        synchronized (notifyLock) {
+            for (Listener<A, B> listener : listeners) {
+                // a listener may have made an edit of its own, already notified
+                if (notified > next.version()) {
+                    break;
+                }
+                notified = next.version();
+                try {
+                    listener.versionChanged(previous, next);
+                } catch (RuntimeException e) {
+                    if (failure == null) {
+                        failure = e;
+                    } else {
+                        failure.addSuppressed(e);
+                    }
+                }
+            }
+        }
+        if (failure != null) {
+            Thread thread = Thread.currentThread();
+            thread.getUncaughtExceptionHandler().uncaughtException(thread, failure);
+        }
+        return next;
+    }
+
+    /**
+     * Listener of version changes.
+     *
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     */
+    @FunctionalInterface
+    public interface Listener<A, B> {
+
+        void versionChanged(Snapshot<A, B> previous, Snapshot<A, B> current);
+    }
+
+    /**
+     * An immutable version of the cases.
+     *
+     * @param <A> the type of the input to the function.
+     * @param <B> the type of the result of the function.
+     */
+    public static final class Snapshot<A, B> extends AbstractPartialFunction<A, B> {
+
+        private final long version;
+
+        private final Chunk<A, B>[] chunks;
+
+        private final int size;
+
+        private Snapshot(long version, Chunk<A, B>[] chunks) {
+            this.version = version;
+            this.chunks = chunks;
+            int size = 0;
+            for (Chunk<A, B> chunk : chunks) {
+                size += chunk.ids.length;
+            }
+            this.size = size;
+        }
+
+        @SuppressWarnings("unchecked")
+        private static <A, B> Snapshot<A, B> empty() {
+            return new Snapshot<>(0L, new Chunk[0]);
+        }
+
+        public long version() {
+            return version;
+        }
+
+        /**
+         * @return the number of cases.
+         */
+        public int size() {
+            return size;
+        }
+
+        /**
+         * @return the number of compiled chunks.
+         */
+        public int chunkCount() {
+            return chunks.length;
+        }
+
+        /**
+         * @return the ids of the cases, in priority order.
+         */
+        public List<Object> ids() {
+            List<Object> ids = new ArrayList<>(size);
+            for (Chunk<A, B> chunk : chunks) {
+                ids.addAll(Arrays.asList(chunk.ids));
+            }
+            return ids;
+        }
+
+        /**
+         * @param id the id of the case.
+         * @return the case with the given id, or null.
+         */
+        public PartialFunction<A, B> get(Object id) {
+            for (Chunk<A, B> chunk : chunks) {
+                int i = chunk.indexOf(id);
+                if (i >= 0) {
+                    return chunk.cases[i];
+                }
+            }
+            return null;
+        }
+
+        @Override
+        public Boolean isDefinedAt(A a) {
+            for (Chunk<A, B> chunk : chunks) {
+                if (chunk.compiled.isDefinedAt(a)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+
+        @Override
+        public B applyOrElse(A a, Function<? super A, ? extends B> zero) {
+            for (Chunk<A, B> chunk : chunks) {
+                B z = chunk.compiled.applyOrElse(a, checkFallback());
+                if (!fallbackOccurred(z)) {
+                    return z;
+                }
+            }
+            return zero.apply(a);
+        }
+
+        @SuppressWarnings("unchecked")
+        private Snapshot<A, B> adding(Map<?, ? extends PartialFunction<A, B>> cases) {
+            if (cases.isEmpty()) {
+                return this;
+            }
+            Map<Object, PartialFunction<A, B>> pending = new LinkedHashMap<>();
+            for (Map.Entry<?, ? extends PartialFunction<A, B>> e : cases.entrySet()) {
+                if (get(e.getKey()) != null || pending.containsKey(e.getKey())) {
+                    throw new IllegalArgumentException("Duplicate case id " + e.getKey());
+                }
+                pending.put(e.getKey(), e.getValue());
+            }
+            List<Chunk<A, B>> next = new ArrayList<>(Arrays.asList(chunks));
+            List<Object> ids = new ArrayList<>();
+            List<PartialFunction<A, B>> pfs = new ArrayList<>();
+            if (!next.isEmpty() && next.get(next.size() - 1).ids.length < CHUNK_SIZE) {
+                Chunk<A, B> last = next.remove(next.size() - 1);
+                ids.addAll(Arrays.asList(last.ids));
+                pfs.addAll(Arrays.asList(last.cases));
+            }
+            for (Map.Entry<Object, PartialFunction<A, B>> e : pending.entrySet()) {
+                ids.add(e.getKey());
+                pfs.add(e.getValue());
+                if (ids.size() == CHUNK_SIZE) {
+                    next.add(new Chunk<>(ids.toArray(), pfs.toArray(new PartialFunction[0])));
+                    ids.clear();
+                    pfs.clear();
+                }
+            }
+            if (!ids.isEmpty()) {
+                next.add(new Chunk<>(ids.toArray(), pfs.toArray(new PartialFunction[0])));
+            }
+            return new Snapshot<>(version + 1, next.toArray(new Chunk[0]));
+        }
+
+        @SuppressWarnings("unchecked")
+        private Snapshot<A, B> replacing(Object id, PartialFunction<A, B> pf, boolean required) {
+            for (int c = 0; c < chunks.length; c++) {
+                Chunk<A, B> chunk = chunks[c];
+                int i = chunk.indexOf(id);
+                if (i < 0) {
+                    continue;
+                }
+                Chunk<A, B>[] next;
+                if (pf != null) {
+                    PartialFunction<A, B>[] pfs = chunk.cases.clone();
+                    pfs[i] = pf;
+                    next = chunks.clone();
+                    next[c] = new Chunk<>(chunk.ids, pfs);
+                } else {
+                    next = compacted(c, removed(chunk.ids, i), removed(chunk.cases, i));
+                }
+                return new Snapshot<>(version + 1, next);
+            }
+            if (required) {
+                throw new NoSuchElementException("No case with id " + id);
+            }
+            return this;
+        }
+
+        /**
+         * @return the chunks with the one at `c` replaced by `ids` and `cases`, dropped if they are empty
+         * and merged with a neighbour if they are less than half a chunk and fit in it.
+         */
+        @SuppressWarnings("unchecked")
+        private Chunk<A, B>[] compacted(int c, Object[] ids, PartialFunction<A, B>[] cases) {
+            List<Chunk<A, B>> next = new ArrayList<>(Arrays.asList(chunks));
+            next.remove(c);
+            if (ids.length > 0) {
+                if (ids.length < CHUNK_SIZE / 2) {
+                    if (c > 0 && next.get(c - 1).ids.length + ids.length <= CHUNK_SIZE) {
+                        Chunk<A, B> before = next.remove(--c);
+                        ids = concat(before.ids, ids);
+                        cases = concat(before.cases, cases);
+                    } else if (c < next.size() && ids.length + next.get(c).ids.length <= CHUNK_SIZE) {
+                        Chunk<A, B> after = next.remove(c);
+                        ids = concat(ids, after.ids);
+                        cases = concat(cases, after.cases);
+                    }
+                }
+                next.add(c, new Chunk<>(ids, cases));
+            }
+            return next.toArray(new Chunk[0]);
+        }
+
+        private static <T> T[] concat(T[] first, T[] second) {
+            T[] result = Arrays.copyOf(first, first.length + second.length);
+            System.arraycopy(second, 0, result, first.length, second.length);
+            return result;
+        }
+
+        private static <T> T[] removed(T[] array, int i) {
+            T[] result = Arrays.copyOf(array, array.length - 1);
+            System.arraycopy(array, i + 1, result, i, array.length - i - 1);
+            return result;
+        }
+    }
+
+    /**
+     * Up to `CHUNK_SIZE` cases and their compiled form.
+     */
+    private static final class Chunk<A, B> {
+
+        private final Object[] ids;
+
+        private final PartialFunction<A, B>[] cases;
+
+        private final PartialFunction<A, B> compiled;
+
+        private Chunk(Object[] ids, PartialFunction<A, B>[] cases) {
+            this.ids = ids;
+            this.cases = cases;
+            List<PartialFunction<A, B>> flattened = new ArrayList<>();
+            for (PartialFunction<A, B> pf : cases) {
+                flattened.addAll(PartialFunctionCompanion.cases(pf));
+            }
+            this.compiled = PartialFunctionCompanion.compileCases(flattened);
+        }
+
+        private int indexOf(Object id) {
+            for (int i = 0; i < ids.length; i++) {
+                if (Objects.equals(ids[i], id)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+}
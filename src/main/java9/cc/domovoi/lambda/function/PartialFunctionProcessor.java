@@ -0,0 +1,470 @@
+package cc.domovoi.lambda.function;
+
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Flow;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * A `Flow.Processor` stage applying a partial function to the elements of its upstream. The results are
+ * published to the subscriber of this processor, and the elements the function is not defined at are
+ * routed to a separate `unmatched` subscriber, or dropped if there is none.
+ * <p>
+ * Upstream elements are requested in batches: `bufferSize` at first, then three quarters of it each time
+ * as many elements have been consumed, so the buffer never holds more than `bufferSize` elements. Each drain
+ * pass delivers as many elements as the downstream demand allows. Elements are delivered in order, so an
+ * element waiting for the demand of its subscriber holds back the following ones.
+ * <p>
+ * This class requires Java 9, and is packaged in the versioned part of the multi-release jar.
+ *
+ * @param <A> the type of the input to the function.
+ * @param <B> the type of the result of the function.
+ */
+public class PartialFunctionProcessor<A, B> implements Flow.Processor<A, B> {
+
+    private static final Flow.Subscription NOOP = new Flow.Subscription() {
+        @Override
+        public void request(long n) {
+        }
+
+        @Override
+        public void cancel() {
+        }
+    };
+
+    private final PartialFunction<A, B> pf;
+
+    private final int bufferSize;
+
+    private final int limit;
+
+    private final ArrayBlockingQueue<A> queue;
+
+    private final Downstream<B> matched = new Downstream<>();
+
+    private final Downstream<A> unmatched = new Downstream<>();
+
+    private final Flow.Subscriber<? super A> unmatchedSubscriber;
+
+    private final AtomicReference<Flow.Subscription> upstream = new AtomicReference<>();
+
+    private final AtomicInteger wip = new AtomicInteger();
+
+    private volatile boolean done;
+
+    private volatile Throwable error;
+
+    private volatile long startNanos;
+
+    // drain state, only accessed by the thread holding `wip`
+
+    private boolean terminated;
+
+    private int consumed;
+
+    private boolean hasPending;
+
+    private boolean pendingMatched;
+
+    private Object pendingValue;
+
+    private final LongAdder received = new LongAdder();
+
+    private final LongAdder matchedCount = new LongAdder();
+
+    private final LongAdder unmatchedCount = new LongAdder();
+
+    private final LongAdder droppedCount = new LongAdder();
+
+    private final LongAdder requests = new LongAdder();
+
+    public PartialFunctionProcessor(PartialFunction<? super A, ? extends B> pf) {
+        this(pf, null, Flow.defaultBufferSize());
+    }
+
+    public PartialFunctionProcessor(PartialFunction<? super A, ? extends B> pf, Flow.Subscriber<? super A> unmatched) {
+        this(pf, unmatched, Flow.defaultBufferSize());
+    }
+
+    /**
+     * @param pf         the partial function.
+     * @param unmatched  the subscriber of the elements `pf` is not defined at, or `null` to drop them.
+     * @param bufferSize the maximum number of buffered elements.
+     */
+    @SuppressWarnings("unchecked")
+    public PartialFunctionProcessor(PartialFunction<? super A, ? extends B> pf, Flow.Subscriber<? super A> unmatched, int bufferSize) {
+        if (bufferSize < 1) {
+            throw new IllegalArgumentException("bufferSize must be positive");
+        }
+        this.pf = (PartialFunction<A, B>) Objects.requireNonNull(pf);
+        this.unmatchedSubscriber = unmatched;
+        this.bufferSize = bufferSize;
+        this.limit = Math.max(1, bufferSize - (bufferSize >> 2));
+        this.queue = new ArrayBlockingQueue<>(bufferSize);
+    }
+
+    @Override
+    public void subscribe(Flow.Subscriber<? super B> subscriber) {
+        Objects.requireNonNull(subscriber);
+        if (!matched.claim()) {
+            subscriber.onSubscribe(NOOP);
+            subscriber.onError(new IllegalStateException("PartialFunctionProcessor allows only one subscriber"));
+            return;
+        }
+        subscriber.onSubscribe(matched);
+        matched.attach(subscriber);
+    }
+
+    @Override
+    public void onSubscribe(Flow.Subscription subscription) {
+        if (!upstream.compareAndSet(null, subscription)) {
+            subscription.cancel();
+            return;
+        }
+        startNanos = System.nanoTime();
+        if (unmatchedSubscriber != null && unmatched.claim()) {
+            unmatchedSubscriber.onSubscribe(unmatched);
+            unmatched.attach(unmatchedSubscriber);
+        }
+        requests.increment();
+        subscription.request(bufferSize);
+    }
+
+    @Override
+    public void onNext(A a) {
+        received.increment();
+        if (!queue.offer(Objects.requireNonNull(a))) {
+            fail(new IllegalStateException("Buffer overflow, upstream sent more elements than requested"));
+            return;
+        }
+        drain();
+    }
+
+    @Override
+    public void onError(Throwable throwable) {
+        error = Objects.requireNonNull(throwable);
+        done = true;
+        drain();
+    }
+
+    @Override
+    public void onComplete() {
+        done = true;
+        drain();
+    }
+
+    /**
+     * @return the metrics of this processor.
+     */
+    public Metrics metrics() {
+        long start = startNanos;
+        return new Metrics(queue.size() + (hasPending ? 1 : 0), bufferSize, received.sum(), matchedCount.sum(),
+                unmatchedCount.sum(), droppedCount.sum(), requests.sum(), start == 0L ? 0L : System.nanoTime() - start);
+    }
+
+    private void fail(Throwable e) {
+        Flow.Subscription s = upstream.get();
+        if (s != null) {
+            s.cancel();
+        }
+        onError(e);
+    }
+
+    private void drain() {
+        if (wip.getAndIncrement() != 0) {
+            return;
+        }
+        int missed = 1;
+        do {
+            drainLoop();
+            missed = wip.addAndGet(-missed);
+        } while (missed != 0);
+    }
+
+    private void drainLoop() {
+        matched.signalInvalidRequest();
+        unmatched.signalInvalidRequest();
+        while (!terminated) {
+            if (matched.isCancelled() && unmatched.isDropping()) {
+                terminated = true;
+                clear();
+                Flow.Subscription s = upstream.get();
+                if (s != null) {
+                    s.cancel();
+                }
+                return;
+            }
+            // terminal signals wait until the subscribers have returned from onSubscribe
+            boolean attached = matched.subscriber != null && !unmatched.isAttaching();
+            Throwable e = error;
+            if (e != null) {
+                if (attached) {
+                    terminated = true;
+                    clear();
+                    matched.error(e);
+                    unmatched.error(e);
+                }
+                return;
+            }
+            if (!hasPending) {
+                A a = queue.poll();
+                if (a == null) {
+                    if (done && attached) {
+                        terminated = true;
+                        matched.complete();
+                        unmatched.complete();
+                    }
+                    return;
+                }
+                if (++consumed == limit) {
+                    consumed = 0;
+                    requests.increment();
+                    upstream.get().request(limit);
+                }
+                B z;
+                try {
+                    z = pf.applyOrElse(a, PartialFunctionCompanion.checkFallback());
+                } catch (Throwable t) {
+                    fail(t);
+                    continue;
+                }
+                hasPending = true;
+                pendingMatched = !PartialFunctionCompanion.fallbackOccurred(z);
+                pendingValue = pendingMatched ? z : a;
+            }
+            Downstream<?> target = pendingMatched ? matched : unmatched;
+            if ((pendingMatched && matched.isCancelled()) || (!pendingMatched && unmatched.isDropping())) {
+                droppedCount.increment();
+            } else if (target.subscriber == null) {
+                return;
+            } else if (target.take()) {
+                deliver();
+            } else {
+                return;
+            }
+            hasPending = false;
+            pendingValue = null;
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private void deliver() {
+        if (pendingMatched) {
+            matchedCount.increment();
+            matched.subscriber.onNext((B) pendingValue);
+        } else {
+            unmatchedCount.increment();
+            unmatched.subscriber.onNext((A) pendingValue);
+        }
+    }
+
+    private void clear() {
+        queue.clear();
+        hasPending = false;
+        pendingValue = null;
+    }
+
+    /**
+     * A subscriber of this processor and its demand.
+     * <p>
+     * The subscriber is claimed before its `onSubscribe` is called, and attached once it has returned:
+     * nothing is signalled to it in between, except the elements it requests from within `onSubscribe`.
+     */
+    private final class Downstream<T> implements Flow.Subscription {
+
+        volatile Flow.Subscriber<? super T> subscriber;
+
+        private final AtomicLong demand = new AtomicLong();
+
+        private volatile boolean cancelled;
+
+        private volatile Throwable invalidRequest;
+
+        private final AtomicInteger claimed = new AtomicInteger();
+
+        // only accessed by the thread holding `wip`
+        private boolean terminal;
+
+        boolean claim() {
+            return claimed.compareAndSet(0, 1);
+        }
+
+        void attach(Flow.Subscriber<? super T> s) {
+            subscriber = s;
+            drain();
+        }
+
+        @Override
+        public void request(long n) {
+            if (cancelled) {
+                return;
+            }
+            if (n <= 0) {
+                // rule 3.9: only this subscriber is at fault, it is cancelled and errored by the drain loop
+                invalidRequest = new IllegalArgumentException("non-positive request " + n);
+                cancelled = true;
+                drain();
+                return;
+            }
+            demand.accumulateAndGet(n, (current, added) -> current + added < 0 ? Long.MAX_VALUE : current + added);
+            drain();
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+            drain();
+        }
+
+        boolean isCancelled() {
+            return cancelled;
+        }
+
+        /**
+         * @return true if the elements for this downstream are dropped.
+         */
+        boolean isDropping() {
+            return cancelled || claimed.get() == 0;
+        }
+
+        /**
+         * @return true between the call to `onSubscribe` and its return.
+         */
+        boolean isAttaching() {
+            return claimed.get() != 0 && subscriber == null;
+        }
+
+        /**
+         * Consumes one unit of demand.
+         */
+        boolean take() {
+            long d = demand.get();
+            if (d == 0L) {
+                return false;
+            } else if (d != Long.MAX_VALUE) {
+                demand.decrementAndGet();
+            }
+            return true;
+        }
+
+        void complete() {
+            if (subscriber != null && !cancelled && !terminal) {
+                terminal = true;
+                subscriber.onComplete();
+            }
+        }
+
+        void error(Throwable e) {
+            if (subscriber != null && !cancelled && !terminal) {
+                terminal = true;
+                subscriber.onError(e);
+            }
+        }
+
+        /**
+         * Signals the error of an invalid request, from the drain loop so that it is serialized with `onNext`.
+         */
+        void signalInvalidRequest() {
+            Throwable e = invalidRequest;
+            if (e != null && subscriber != null && !terminal) {
+                terminal = true;
+                subscriber.onError(e);
+            }
+        }
+    }
+
+    /**
+     * Metrics of a PartialFunctionProcessor.
+     */
+    public static final class Metrics {
+
+        private final int queueDepth;
+
+        private final int bufferSize;
+
+        private final long received;
+
+        private final long matched;
+
+        private final long unmatched;
+
+        private final long dropped;
+
+        private final long requests;
+
+        private final long elapsedNanos;
+
+        private Metrics(int queueDepth, int bufferSize, long received, long matched, long unmatched, long dropped, long requests, long elapsedNanos) {
+            this.queueDepth = queueDepth;
+            this.bufferSize = bufferSize;
+            this.received = received;
+            this.matched = matched;
+            this.unmatched = unmatched;
+            this.dropped = dropped;
+            this.requests = requests;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * @return the number of buffered elements not delivered yet.
+         */
+        public int queueDepth() {
+            return queueDepth;
+        }
+
+        public int bufferSize() {
+            return bufferSize;
+        }
+
+        /**
+         * @return the number of elements received from upstream.
+         */
+        public long received() {
+            return received;
+        }
+
+        /**
+         * @return the number of results delivered to the subscriber.
+         */
+        public long matched() {
+            return matched;
+        }
+
+        /**
+         * @return the number of elements delivered to the unmatched subscriber.
+         */
+        public long unmatched() {
+            return unmatched;
+        }
+
+        /**
+         * @return the number of elements dropped because their subscriber is missing or cancelled.
+         */
+        public long dropped() {
+            return dropped;
+        }
+
+        /**
+         * @return the number of requests sent upstream.
+         */
+        public long requests() {
+            return requests;
+        }
+
+        /**
+         * @return the number of elements processed per second since the subscription to upstream.
+         */
+        public double throughput() {
+            return elapsedNanos == 0L ? 0.0 : (matched + unmatched + dropped) * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("Metrics(queueDepth=%d, received=%d, matched=%d, unmatched=%d, dropped=%d, requests=%d, throughput=%.1f/s)",
+                    queueDepth, received, matched, unmatched, dropped, requests, throughput());
+        }
+    }
+}
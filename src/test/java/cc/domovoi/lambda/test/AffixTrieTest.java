@@ -0,0 +1,51 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.function.AffixTrie;
+import cc.domovoi.lambda.function.PartialFunction;
+import cc.domovoi.lambda.function.PartialFunctions;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.stream.Collectors;
+
+public class AffixTrieTest {
+
+    private PartialFunction<String, String> routes() {
+        return PartialFunctions.onPrefix("/api/v1", (s, n) -> "v1:" + s.substring(n))
+                .orElse(PartialFunctions.onPrefix("/api/v1/orders", (s, n) -> "orders:" + s.substring(n)))
+                .orElse(PartialFunctions.onSuffix(".json", (s, n) -> "json:" + s.substring(0, s.length() - n)))
+                .orElseOf(s -> s.isEmpty(), s -> "root")
+                .orElse(PartialFunctions.onPrefix("/static/", (s, n) -> "static"))
+                .orElse(PartialFunctions.onPrefix("/", (s, n) -> "other"))
+                .end();
+    }
+
+    private final List<String> paths = Arrays.asList("/api/v1/orders/7", "/api/v2/x.json", "", "/static/a.css", "/home", "x");
+
+    @Test
+    public void testCompiledKeepsPriority() {
+        List<String> expected = paths.stream().filter(routes()::isDefinedAt).map(routes()).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("v1:/orders/7", "json:/api/v2/x", "root", "static", "other"), expected);
+        PartialFunction<String, String> compiled = PartialFunctions.compile(routes());
+        Assert.assertEquals(expected, paths.stream().filter(compiled::isDefinedAt).map(compiled).collect(Collectors.toList()));
+        Assert.assertFalse(compiled.isDefinedAt("x"));
+        Assert.assertEquals("fallback", compiled.orEndWith("fallback").apply("x"));
+    }
+
+    @Test
+    public void testLongestMatch() {
+        PartialFunction<String, String> compiled = PartialFunctions.compile(routes(), AffixTrie.Mode.LONGEST);
+        Assert.assertEquals("orders:/7", compiled.apply("/api/v1/orders/7"));
+        Assert.assertEquals("json:/api/v2/x", compiled.apply("/api/v2/x.json"));
+        Assert.assertEquals("v1:/x.json", compiled.apply("/api/v1/x.json"));
+
+        AffixTrie<Integer> trie = (AffixTrie<Integer>) PartialFunctions.compile(
+                PartialFunctions.onSuffix(".tar.gz", (s, n) -> n).orElse(PartialFunctions.onSuffix(".gz", (s, n) -> n)),
+                AffixTrie.Mode.LONGEST);
+        Assert.assertEquals(2, trie.size());
+        Assert.assertEquals(Integer.valueOf(7), trie.apply("a.tar.gz"));
+        Assert.assertEquals(Integer.valueOf(3), trie.apply("a.gz"));
+    }
+}
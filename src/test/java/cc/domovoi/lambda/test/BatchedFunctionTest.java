@@ -0,0 +1,81 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.function.BatchedFunction;
+import cc.domovoi.lambda.function.EJFunction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class BatchedFunctionTest {
+
+    private final List<List<Integer>> calls = new ArrayList<>();
+
+    private Map<Integer, String> lookup(List<Integer> keys) {
+        synchronized (calls) {
+            calls.add(keys);
+        }
+        return keys.stream().collect(Collectors.toMap(Function.identity(), k -> "v" + k));
+    }
+
+    @Test
+    public void testFullBatchIsDeduplicated() {
+        BatchedFunction<Integer, String> f = EJFunction.batched(this::lookup, 2, Duration.ofSeconds(10));
+        CompletableFuture<String> f1 = f.applyAsync(1);
+        CompletableFuture<String> f2 = f.applyAsync(1);
+        CompletableFuture<String> f3 = f.applyAsync(2);
+        Assert.assertEquals("v1", f1.join());
+        Assert.assertEquals("v1", f2.join());
+        Assert.assertEquals("v2", f3.join());
+        Assert.assertEquals(Arrays.asList(Arrays.asList(1, 2)), calls);
+        Assert.assertEquals(3L, f.stats().requests());
+        Assert.assertEquals(1L, f.stats().deduplicated());
+        Assert.assertEquals(1L, f.stats().batches());
+    }
+
+    @Test
+    public void testDelayedBatch() {
+        BatchedFunction<Integer, String> f = EJFunction.batched(this::lookup, 100, Duration.ofMillis(5));
+        Assert.assertEquals("v7", f.apply(7));
+        Assert.assertEquals(Arrays.asList(Arrays.asList(7)), calls);
+    }
+
+    @Test
+    public void testDelayedBatchRunsOnTimerThread() {
+        List<String> threads = new ArrayList<>();
+        BatchedFunction<Integer, String> f = EJFunction.batched(keys -> {
+            threads.add(Thread.currentThread().getName());
+            return lookup(keys);
+        }, 100, Duration.ofMillis(5));
+        Assert.assertEquals("v7", f.apply(7));
+        Assert.assertEquals(Arrays.asList("ej-lambda-batch-timer"), threads);
+    }
+
+    @Test
+    public void testConcurrentCalls() {
+        BatchedFunction<Integer, String> f = EJFunction.batched(this::lookup, 16, Duration.ofMillis(1));
+        List<String> results = IntStream.range(0, 1000).boxed().parallel().map(f).collect(Collectors.toList());
+        Assert.assertEquals(IntStream.range(0, 1000).mapToObj(i -> "v" + i).collect(Collectors.toList()), results);
+        Assert.assertEquals(1000L, f.stats().keys());
+        Assert.assertTrue(f.stats().maxBatchSize() <= 16);
+    }
+
+    @Test
+    public void testSingleKeyBatches() {
+        BatchedFunction<Integer, String> f = EJFunction.batched(this::lookup, 1, Duration.ofSeconds(10));
+        Assert.assertEquals("v1", f.apply(1));
+        Assert.assertEquals("v2", f.apply(2));
+        Assert.assertEquals(Arrays.asList(Arrays.asList(1), Arrays.asList(2)), calls);
+        Assert.assertEquals(2L, f.stats().batches());
+        Assert.assertTrue(f.stats().averageWaitNanos() >= 0.0);
+        Assert.assertTrue(f.stats().averageWaitNanos() < 1e9);
+    }
+}
@@ -0,0 +1,57 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.function.BiPartialFunction;
+import cc.domovoi.lambda.function.BiPartialFunctions;
+import cc.domovoi.lambda.function.MatchError;
+import cc.domovoi.lambda.function.PartialFunction;
+import cc.domovoi.lambda.function.PartialFunctions;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Optional;
+import java.util.stream.Collectors;
+
+public class BiPartialFunctionTest {
+
+    private static final BiPartialFunction<Locale, Integer, String> GREETING =
+            BiPartialFunctions.of((Locale locale, Integer hour) -> hour < 12 && locale.equals(Locale.FRENCH), (locale, hour) -> "bonjour")
+                    .orElseOf((locale, hour) -> hour < 12, (locale, hour) -> "good morning")
+                    .orElseOf((locale, hour) -> hour < 24, (locale, hour) -> locale.getLanguage() + ":" + hour)
+                    .end();
+
+    @Test
+    public void testBind() {
+        List<Integer> hours = Arrays.asList(9, 20);
+        Assert.assertEquals(Arrays.asList("bonjour", "fr:20"), hours.stream().map(GREETING.bind(Locale.FRENCH)).collect(Collectors.toList()));
+        Assert.assertEquals(Arrays.asList("good morning", "en:20"), hours.stream().map(GREETING.bind(Locale.ENGLISH)).collect(Collectors.toList()));
+
+        PartialFunction<Integer, String> english = GREETING.bind(Locale.ENGLISH);
+        Assert.assertFalse(english.isDefinedAt(25));
+        Assert.assertEquals(Optional.empty(), english.lift().apply(25));
+        Assert.assertEquals("late", english.orEndWith("late").apply(25));
+        try {
+            english.apply(25);
+            Assert.fail();
+        } catch (MatchError e) {
+            // Nothing
+        }
+    }
+
+    @Test
+    public void testCombinators() {
+        BiPartialFunction<String, Integer, Integer> scaled = BiPartialFunctions.<String, Integer, Integer>of((unit, x) -> x >= 0, (unit, x) -> unit.equals("k") ? x * 1000 : x)
+                .andThen(x -> x + 1);
+        Assert.assertEquals(Integer.valueOf(2001), scaled.apply("k", 2));
+        Assert.assertEquals(Optional.empty(), scaled.lift().apply("k", -2));
+        Assert.assertEquals(Integer.valueOf(0), scaled.orEndWith(0).apply("k", -2));
+
+        BiPartialFunction<String, Integer, Integer> fallback = scaled
+                .orElse(BiPartialFunctions.from(PartialFunctions.of((Integer x) -> x < 0, x -> -x)))
+                .end();
+        Assert.assertEquals(Integer.valueOf(2), fallback.apply("k", -2));
+        Assert.assertEquals(Integer.valueOf(4), fallback.andThen(x -> x * 2).apply("", -2));
+    }
+}
@@ -0,0 +1,129 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.EJCollector;
+import cc.domovoi.lambda.function.Condition;
+import cc.domovoi.lambda.function.Conditions;
+import cc.domovoi.lambda.function.DecisionNetwork;
+import cc.domovoi.lambda.function.MatchError;
+import cc.domovoi.lambda.function.MultiMatch;
+import cc.domovoi.lambda.function.PartialFunction;
+import cc.domovoi.lambda.function.PartialFunctions;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+public class DecisionNetworkTest {
+
+    public static class Order {
+        private String country;
+
+        private Integer amount;
+
+        public Order(String country, Integer amount) {
+            this.country = country;
+            this.amount = amount;
+        }
+
+        public String getCountry() {
+            return country;
+        }
+
+        public Integer getAmount() {
+            return amount;
+        }
+    }
+
+    private final AtomicInteger countryReads = new AtomicInteger();
+
+    private final AtomicInteger amountReads = new AtomicInteger();
+
+    private final Conditions.Field<Order, String> country = Conditions.field("country", o -> {
+        countryReads.incrementAndGet();
+        return o.getCountry();
+    });
+
+    private final Conditions.Field<Order, Integer> amount = Conditions.field("amount", o -> {
+        amountReads.incrementAndGet();
+        return o.getAmount();
+    });
+
+    private PartialFunction<Order, String> rules() {
+        Condition<Order> large = amount.gt(1000);
+        return PartialFunctions.of(country.eq("JP").and(large), o -> "large-jp")
+                .orElseOf(country.eq("CN").and(large), o -> "large-cn")
+                .orElseOf(country.in("JP", "CN").and(amount.le(1000)), o -> "small-asia")
+                .orElseOf(Conditions.not(country.in("JP", "CN")), o -> "other")
+                .end();
+    }
+
+    @Test
+    public void testCompiledChainKeepsFirstMatch() {
+        List<Order> orders = Arrays.asList(new Order("JP", 2000), new Order("CN", 5000), new Order("CN", 10), new Order("US", 1));
+        PartialFunction<Order, String> compiled = PartialFunctions.compile(rules());
+        List<String> expected = orders.stream().map(rules()).collect(Collectors.toList());
+        Assert.assertEquals(Arrays.asList("large-jp", "large-cn", "small-asia", "other"), expected);
+        Assert.assertEquals(expected, orders.stream().map(compiled).collect(Collectors.toList()));
+    }
+
+    @Test
+    public void testEachTestRunsOnce() {
+        DecisionNetwork<Order, String> compiled = (DecisionNetwork<Order, String>) PartialFunctions.compile(rules());
+        Assert.assertEquals(4, compiled.size());
+        countryReads.set(0);
+        amountReads.set(0);
+        Assert.assertEquals("small-asia", compiled.apply(new Order("CN", 10)));
+        Assert.assertEquals(1, countryReads.get());
+        Assert.assertEquals(1, amountReads.get());
+    }
+
+    @Test
+    public void testCompiledChainNoDefined() {
+        PartialFunction<Order, String> compiled = PartialFunctions.compile(
+                PartialFunctions.of(amount.ge(0), (Order o) -> "non-negative")
+                        .orElseOf(o -> o.getCountry() == null, o -> "unknown")
+                        .end());
+        Assert.assertTrue(compiled.isDefinedAt(new Order(null, -1)));
+        Assert.assertFalse(compiled.isDefinedAt(new Order("JP", -1)));
+        try {
+            compiled.apply(new Order("JP", -1));
+            Assert.fail();
+        } catch (MatchError e) {
+            // Nothing
+        }
+    }
+
+    @Test
+    public void testMatchAll() {
+        MultiMatch<Order, String> cases = PartialFunctions.matchAll(
+                PartialFunctions.of(country.eq("JP"), (Order o) -> "jp")
+                        .orElseOf(amount.gt(1000), o -> "large")
+                        .orElseOf(country.eq("JP").and(amount.gt(1000)), o -> "large-jp")
+                        .orElseOf(o -> o.getCountry() == null, o -> "unknown")
+                        .end());
+        Assert.assertEquals(4, cases.size());
+        BitSet matched = new BitSet();
+        List<String> results = new ArrayList<>();
+        countryReads.set(0);
+        amountReads.set(0);
+        Assert.assertEquals(3, cases.applyAll(new Order("JP", 2000), matched, results));
+        Assert.assertEquals(1, countryReads.get());
+        Assert.assertEquals(1, amountReads.get());
+        Assert.assertEquals(Arrays.asList("jp", "large", "large-jp"), results);
+        Assert.assertEquals("{0, 1, 2}", matched.toString());
+        Assert.assertEquals(0, cases.match(new Order("US", 1), matched));
+        Assert.assertTrue(matched.isEmpty());
+        Assert.assertEquals("{1, 3}", cases.match(new Order(null, 5000)).toString());
+
+        long[] counts = Stream.of(new Order("JP", 2000), new Order("JP", 10), new Order("CN", 5000), new Order(null, 1))
+                .parallel()
+                .collect(EJCollector.countingMatches(cases));
+        Assert.assertArrayEquals(new long[]{2, 2, 1, 1}, counts);
+    }
+}
@@ -1,13 +1,26 @@
 package cc.domovoi.lambda.test;
 
+import cc.domovoi.lambda.AggregateSummary;
+import cc.domovoi.lambda.CountState;
 import cc.domovoi.lambda.EJCollector;
+import cc.domovoi.lambda.KeyCodec;
+import cc.domovoi.lambda.NestedCountState;
+import org.junit.Assert;
 import org.junit.Test;
 
+import java.io.DataInput;
+import java.io.DataOutput;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
+import java.util.DoubleSummaryStatistics;
 import java.util.List;
 import java.util.Map;
 import java.util.function.Function;
 import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class EJCollectorTest {
 
@@ -56,4 +69,159 @@ public class EJCollectorTest {
         System.out.println("====");
         dualMap3.forEach((k1, v1) -> v1.forEach((k2, v2) -> System.out.println(String.format("(%s,%s) -> %s", k1, k2, v2))));
     }
+
+    @Test
+    public void testGroupingByAggregates() {
+        List<Integer> data = IntStream.range(0, 10000).boxed().collect(Collectors.toList());
+        Map<Integer, AggregateSummary> sequential = data.stream()
+                .collect(EJCollector.groupingByAggregates(i -> i % 3, i -> i, i -> i * 0.5));
+        Map<Integer, AggregateSummary> parallel = data.parallelStream()
+                .collect(EJCollector.groupingByAggregates(i -> i % 3, i -> i, i -> i * 0.5));
+        Map<Integer, DoubleSummaryStatistics> expected = data.stream()
+                .collect(Collectors.groupingBy(i -> i % 3, Collectors.summarizingDouble(i -> i)));
+        for (Map<Integer, AggregateSummary> result : Arrays.asList(sequential, parallel)) {
+            Assert.assertEquals(expected.keySet(), result.keySet());
+            expected.forEach((k, stats) -> {
+                AggregateSummary summary = result.get(k);
+                Assert.assertEquals(stats.getCount(), summary.count());
+                Assert.assertEquals(stats.getSum(), summary.sum(0), 1e-9);
+                Assert.assertEquals(stats.getMin(), summary.min(0), 1e-9);
+                Assert.assertEquals(stats.getMax(), summary.max(0), 1e-9);
+                Assert.assertEquals(stats.getAverage() * 0.5, summary.mean(1), 1e-9);
+                double variance = data.stream().filter(i -> i % 3 == k).mapToDouble(i -> Math.pow(i - stats.getAverage(), 2)).sum() / stats.getCount();
+                Assert.assertEquals(variance, summary.variance(0), 1e-6);
+                Assert.assertEquals(variance * 0.25, summary.variance(1), 1e-6);
+            });
+        }
+    }
+
+    @Test
+    public void testGroupingByLongAggregates() {
+        long big = 1L << 53;
+        List<Long> data = Arrays.asList(big, 1L, 1L, big + 4, -3L, 2L);
+        Map<Boolean, AggregateSummary> sequential = data.stream()
+                .collect(EJCollector.groupingByLongAggregates(l -> l > 0, l -> l, l -> -l));
+        Map<Boolean, AggregateSummary> parallel = data.parallelStream()
+                .collect(EJCollector.groupingByLongAggregates(l -> l > 0, l -> l, l -> -l));
+        for (Map<Boolean, AggregateSummary> result : Arrays.asList(sequential, parallel)) {
+            AggregateSummary positive = result.get(true);
+            Assert.assertTrue(positive.isIntegral());
+            Assert.assertEquals(5L, positive.count());
+            Assert.assertEquals(2 * big + 8, positive.longSum(0));
+            Assert.assertEquals(-2 * big - 8, positive.longSum(1));
+            Assert.assertEquals(1.0, positive.min(0), 0.0);
+            Assert.assertEquals(1L, positive.longMin(0));
+            Assert.assertEquals(big + 4, positive.longMax(0));
+            Assert.assertEquals(-big - 4, positive.longMin(1));
+            Assert.assertEquals((2 * big + 8) / 5.0, positive.mean(0), 1.0);
+            Assert.assertEquals(-3L, result.get(false).longSum(0));
+            Assert.assertEquals(0.0, result.get(false).variance(0), 0.0);
+        }
+        try {
+            data.stream().collect(EJCollector.groupingByAggregates(l -> l > 0, l -> l)).get(true).longSum(0);
+            Assert.fail();
+        } catch (IllegalStateException e) {
+            // Nothing
+        }
+    }
+
+    @Test
+    public void testGroupingSortedBy() {
+        List<Integer> data = IntStream.range(0, 10000).boxed().collect(Collectors.toList());
+        Map<Integer, Long> expected = data.stream().collect(Collectors.groupingBy(i -> i / 7, Collectors.counting()));
+        Map<Integer, Long> sequential = data.stream().collect(EJCollector.groupingSortedBy(i -> i / 7, Collectors.counting()));
+        Map<Integer, Long> parallel = data.parallelStream().collect(EJCollector.groupingSortedBy(i -> i / 7, Collectors.counting(), Comparator.naturalOrder()));
+        Assert.assertEquals(expected, sequential);
+        Assert.assertEquals(expected, parallel);
+        Assert.assertEquals(new ArrayList<>(expected.keySet()), new ArrayList<>(parallel.keySet()));
+    }
+
+    @Test(expected = IllegalStateException.class)
+    public void testGroupingSortedByUnsorted() {
+        Stream.of(1, 1, 2, 1).collect(EJCollector.groupingSortedBy(Function.identity(), EJCollector.countingInt()));
+    }
+
+    @Test
+    public void testGroupSortedByIsLazy() {
+        List<Map.Entry<Integer, Integer>> groups = EJCollector.groupSortedBy(Stream.iterate(0, i -> i + 1), i -> i / 10, Collectors.summingInt(i -> i))
+                .limit(3)
+                .collect(Collectors.toList());
+        Assert.assertEquals(3, groups.size());
+        Assert.assertEquals(Integer.valueOf(2), groups.get(2).getKey());
+        Assert.assertEquals(Integer.valueOf(245), groups.get(2).getValue());
+    }
+
+    @Test
+    public void testCountStateMerge() {
+        List<String> words = Arrays.asList("apple", "avocado", "banana", "blueberry", "cherry", "apricot", "banana");
+        Map<Character, Integer> expected = words.stream().collect(EJCollector.groupingByCount(w -> w.charAt(0)));
+        KeyCodec<Character> chars = new KeyCodec<Character>() {
+            @Override
+            public void write(DataOutput out, Character key) throws IOException {
+                out.writeChar(key);
+            }
+
+            @Override
+            public Character read(DataInput in) throws IOException {
+                return in.readChar();
+            }
+        };
+        CountState<Character> merged = new CountState<>();
+        for (int from = 0; from < words.size(); from += 3) {
+            byte[] encoded = words.subList(from, Math.min(from + 3, words.size())).stream()
+                    .collect(EJCollector.groupingByCountState(w -> w.charAt(0)))
+                    .encode(chars);
+            merged.merge(CountState.decode(encoded, chars));
+        }
+        Assert.assertEquals(expected, merged.toIntMap());
+        Assert.assertEquals(7L, merged.total());
+        Assert.assertEquals(words.parallelStream().collect(EJCollector.groupingByCountState(w -> w.charAt(0))), merged);
+    }
+
+    @Test
+    public void testNestedCountStateMerge() {
+        List<Integer> left = IntStream.range(-50, 100).boxed().collect(Collectors.toList());
+        List<Integer> right = IntStream.range(0, 300).boxed().collect(Collectors.toList());
+        NestedCountState<String, Integer> a = left.stream().collect(EJCollector.groupingTwiceByCountState(i -> i < 0 ? "neg" : "pos", i -> i % 3));
+        NestedCountState<String, Integer> b = right.parallelStream().collect(EJCollector.groupingTwiceByCountState(i -> i < 0 ? "neg" : "pos", i -> i % 3));
+        byte[] encoded = b.encode(KeyCodec.strings(), KeyCodec.integers());
+        NestedCountState<String, Integer> merged = NestedCountState.decode(a.encode(KeyCodec.strings(), KeyCodec.integers()), KeyCodec.strings(), KeyCodec.integers())
+                .merge(NestedCountState.decode(encoded, KeyCodec.strings(), KeyCodec.integers()));
+        Map<String, Map<Integer, Integer>> expected = Stream.concat(left.stream(), right.stream())
+                .collect(EJCollector.groupingTwiceBy(i -> i < 0 ? "neg" : "pos", i -> i % 3, EJCollector.countingInt()));
+        Assert.assertEquals(expected, merged.toIntMap());
+        Assert.assertEquals(17L, merged.count("neg", -2));
+        Assert.assertEquals(0L, merged.count("neg", 1));
+        try {
+            NestedCountState.decode(Arrays.copyOf(encoded, encoded.length - 1), KeyCodec.strings(), KeyCodec.integers());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Nothing
+        }
+    }
+
+    @Test
+    public void testIntegerKeyCodec() {
+        CountState<Integer> state = new CountState<Integer>()
+                .add(Integer.MIN_VALUE).add(Integer.MAX_VALUE, 2L).add(-1).add(0);
+        byte[] encoded = state.encode(KeyCodec.integers());
+        Assert.assertEquals(state, CountState.decode(encoded, KeyCodec.integers()));
+        // version, size, then at most 5 bytes per key and 1 per count
+        Assert.assertTrue(encoded.length <= 2 + 4 * 6);
+    }
+
+    @Test
+    public void testCountOverflowingVarint() {
+        CountState<Integer> state = new CountState<Integer>().add(1, Long.MIN_VALUE).add(2, -1L);
+        byte[] encoded = state.encode(KeyCodec.integers());
+        Assert.assertEquals(state, CountState.decode(encoded, KeyCodec.integers()));
+        // the tenth byte of the last count carries bits beyond bit 63
+        encoded[encoded.length - 1] = 0x03;
+        try {
+            CountState.decode(encoded, KeyCodec.integers());
+            Assert.fail();
+        } catch (IllegalArgumentException e) {
+            // Nothing
+        }
+    }
 }
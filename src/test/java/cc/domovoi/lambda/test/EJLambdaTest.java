@@ -0,0 +1,51 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.AdaptivePredicate;
+import cc.domovoi.lambda.EJCollector;
+import cc.domovoi.lambda.EJLambda;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Predicate;
+import java.util.stream.IntStream;
+
+public class EJLambdaTest {
+
+    @Test
+    public void testAdaptiveAndReorders() {
+        // each operand advances a fake clock by its cost, so the measurements do not depend on timing
+        AtomicLong clock = new AtomicLong();
+        AtomicLong slowCalls = new AtomicLong();
+        Predicate<Integer> slow = i -> {
+            slowCalls.incrementAndGet();
+            clock.addAndGet(100L);
+            return i % 2 == 0;
+        };
+        Predicate<Integer> cheapSelective = i -> {
+            clock.incrementAndGet();
+            return i % 10 == 0;
+        };
+        @SuppressWarnings("unchecked")
+        AdaptivePredicate<Integer> p = new AdaptivePredicate<>(new Predicate[]{slow, cheapSelective}, true, 1, 16, 4, clock::get);
+        long count = IntStream.range(0, 20000).boxed().filter(p).count();
+        Assert.assertEquals(2000L, count);
+        Assert.assertEquals(1, p.order()[0]);
+        Assert.assertTrue(p.isFrozen());
+
+        slowCalls.set(0L);
+        Assert.assertEquals(100L, IntStream.range(0, 1000).boxed().filter(p).count());
+        Assert.assertEquals(100L, slowCalls.get());
+    }
+
+    @Test
+    public void testAdaptiveOr() {
+        Predicate<Integer> p = EJLambda.adaptiveOr(i -> i < 10, i -> i > 90);
+        Map<Boolean, Integer> counts = IntStream.range(0, 100).boxed()
+                .collect(EJCollector.groupingByCountFilter(i -> i % 2 == 0, p));
+        Assert.assertEquals(Integer.valueOf(9), counts.get(true));
+        Assert.assertEquals(Integer.valueOf(10), counts.get(false));
+        Assert.assertEquals(19L, IntStream.range(0, 100).boxed().filter(p).count());
+    }
+}
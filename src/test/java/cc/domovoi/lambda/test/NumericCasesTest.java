@@ -0,0 +1,68 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.function.NumericCases;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.stream.IntStream;
+
+public class NumericCasesTest {
+
+    private final NumericCases latency = NumericCases.builder()
+            .range(0, 10)
+            .range(5, 100)
+            .range(100, 1000.5)
+            .atLeast(1000)
+            .build();
+
+    @Test
+    public void testClassifyFirstMatch() {
+        Assert.assertEquals(4, latency.size());
+        Assert.assertEquals(-1, latency.classify(-1));
+        Assert.assertEquals(0, latency.classify(0));
+        Assert.assertEquals(0, latency.classify(7));
+        Assert.assertEquals(1, latency.classify(10L));
+        Assert.assertEquals(2, latency.classify(1000));
+        Assert.assertEquals(3, latency.classify(1001L));
+        Assert.assertEquals(2, latency.classify(1000.25));
+        Assert.assertEquals(3, latency.classify(Double.POSITIVE_INFINITY));
+        Assert.assertEquals(-1, latency.classify(Double.NaN));
+        Assert.assertEquals(3, latency.classify(Long.MAX_VALUE));
+        Assert.assertEquals(-1, latency.classify(Integer.MIN_VALUE));
+
+        NumericCases top = NumericCases.builder().range(0, 2147483647.5).build();
+        Assert.assertEquals(0, top.classify(Integer.MAX_VALUE));
+        Assert.assertEquals(0, top.classify((long) Integer.MAX_VALUE));
+        Assert.assertEquals(-1, top.classify(Integer.MAX_VALUE + 1L));
+    }
+
+    @Test
+    public void testBulk() {
+        int[] out = new int[6];
+        latency.classify(new double[]{-0.0, 9.99, Double.NaN, 99, 1000.5, -5}, out);
+        Assert.assertArrayEquals(new int[]{0, 0, -1, 1, 3, -1}, out);
+
+        long[] mapped = new long[4];
+        latency.map(new int[]{3, 50, 500, -3}, mapped, new long[]{10, 100, 1000, 10000}, 0L);
+        Assert.assertArrayEquals(new long[]{10, 100, 1000, 0}, mapped);
+
+        int[] values = IntStream.range(-10, 2000).toArray();
+        Assert.assertArrayEquals(new long[]{10, 90, 901, 999}, latency.histogram(values));
+        Assert.assertArrayEquals(new long[]{1, 0, 0, 1}, latency.histogram(new double[]{Double.NaN, 1, Double.NaN, 1e9}));
+    }
+
+    @Test
+    public void testManyBoundaries() {
+        NumericCases.Builder builder = NumericCases.builder();
+        for (int i = 0; i < 100; i++) {
+            builder.range(i * 10, i * 10 + 10);
+        }
+        NumericCases cases = builder.build();
+        Assert.assertTrue(cases.boundaryCount() > NumericCases.LINEAR_LIMIT);
+        long[] in = {-1, 0, 9, 10, 555, 999, 1000};
+        int[] out = new int[in.length];
+        cases.classify(in, out);
+        Assert.assertArrayEquals(new int[]{-1, 0, 0, 1, 55, 99, -1}, out);
+        Assert.assertEquals(55, cases.classify(555.5));
+    }
+}
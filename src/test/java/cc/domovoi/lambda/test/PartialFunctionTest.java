@@ -1,6 +1,7 @@
 package cc.domovoi.lambda.test;
 
 import cc.domovoi.lambda.function.MatchError;
+import cc.domovoi.lambda.function.MissPolicy;
 import cc.domovoi.lambda.function.PartialFunction;
 import cc.domovoi.lambda.function.PartialFunctions;
 import org.junit.Assert;
@@ -80,4 +81,57 @@ public class PartialFunctionTest {
         Assert.assertTrue("elem is 1".equals(partialFunction3.apply(42)));
         Assert.assertTrue("elem is -1".equals(partialFunction3.apply(-42)));
     }
+
+    @Test
+    public void testPartialFunctionMissPolicy() {
+        MissPolicy<Integer, String> zero = MissPolicy.returning("zero");
+        PartialFunction<Integer, String> partialFunction = PartialFunctions.of((Integer integer) -> integer > 0, integer -> "positive").orElseOf(integer -> integer < 0, integer -> "negative").end(zero);
+        Assert.assertTrue("zero".equals(partialFunction.apply(0)));
+        Assert.assertTrue("positive".equals(partialFunction.apply(1)));
+        Assert.assertTrue(partialFunction.isDefinedAt(0));
+        Assert.assertEquals(1L, zero.misses());
+
+        MissPolicy<Integer, String> stackless = MissPolicy.stackless();
+        PartialFunction<Integer, String> compiled = PartialFunctions.compile(PartialFunctions.of((Integer integer) -> integer > 0, integer -> "positive").end(stackless));
+        Assert.assertFalse(compiled.isDefinedAt(0));
+        Assert.assertFalse(compiled.lift().apply(0).isPresent());
+        try {
+            compiled.apply(0);
+            Assert.fail();
+        } catch (MatchError e) {
+            Assert.assertEquals(0, e.getStackTrace().length);
+            Assert.assertEquals(0, e.getObject());
+        }
+        Assert.assertEquals(1L, stackless.misses());
+    }
+
+    @Test
+    public void testPartialFunctionMissPolicyAndThen() {
+        MissPolicy<Integer, String> zero = MissPolicy.returning("zero");
+        PartialFunction<Integer, Integer> lengths = PartialFunctions.of((Integer integer) -> integer > 0, integer -> "positive")
+                .end(zero)
+                .andThen(String::length);
+        Assert.assertEquals(Integer.valueOf(8), lengths.apply(1));
+        Assert.assertEquals(Integer.valueOf(4), lengths.apply(0));
+        Assert.assertEquals(Optional.of(4), lengths.lift().apply(-1));
+        Assert.assertEquals(2L, zero.misses());
+
+        PartialFunction<Integer, Integer> throwing = PartialFunctions.of((Integer integer) -> integer > 0, integer -> "positive")
+                .end(MissPolicy.stackless())
+                .andThen(String::length);
+        Assert.assertEquals(Integer.valueOf(8), throwing.apply(1));
+        try {
+            throwing.apply(0);
+            Assert.fail();
+        } catch (MatchError e) {
+            Assert.assertEquals(0, e.getObject());
+        }
+    }
+
+    @Test
+    public void testMatchErrorMessage() {
+        Assert.assertEquals("null", new MatchError(null).getMessage());
+        Assert.assertEquals("1 (of class java.lang.Integer)", new MatchError(1).getMessage());
+        Assert.assertSame(MatchError.preallocated(), MatchError.preallocated());
+    }
 }
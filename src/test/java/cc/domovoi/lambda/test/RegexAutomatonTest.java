@@ -0,0 +1,179 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.function.PartialFunction;
+import cc.domovoi.lambda.function.PartialFunctions;
+import cc.domovoi.lambda.function.RegexAutomaton;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+import java.util.Optional;
+import java.util.Random;
+
+public class RegexAutomatonTest {
+
+    private static final List<String> PATTERNS = Arrays.asList(
+            "^GET /api/v(\\d+)/orders/(\\d+)$",
+            "GET /api/v\\d+/.*",
+            "(?<verb>POST|PUT) /api/[a-z]+(/\\w+)*",
+            "(a|b)\\1",
+            "[^\\s/]+\\.(?:json|xml)",
+            "x{2,3}y?",
+            "(?i)ping",
+            "\\d{1,3}(\\.\\d{1,3}){3}",
+            "[a-c-]+z*?",
+            ".*"
+    );
+
+    private PartialFunction<String, String> chain() {
+        PartialFunction<String, String> chain = PartialFunctions.empty();
+        for (int i = 0; i < PATTERNS.size(); i++) {
+            int index = i;
+            chain = chain.orElse(PartialFunctions.onRegex(PATTERNS.get(i), m -> index + ":" + m.group(m.groupCount())));
+        }
+        return chain;
+    }
+
+    @Test
+    public void testCompiledMatchesChain() {
+        PartialFunction<String, String> chain = chain();
+        RegexAutomaton<String> compiled = (RegexAutomaton<String>) PartialFunctions.compile(chain);
+        Assert.assertEquals(PATTERNS.size(), compiled.size());
+        Assert.assertEquals(2, compiled.fallbackCount());
+        List<String> inputs = new ArrayList<>(Arrays.asList("GET /api/v2/orders/17", "GET /api/v1/users", "PUT /api/items/a/b_1",
+                "aa", "ab", "report.json", "a/b.xml", "xx", "xxxy", "PING", "10.0.0.255", "1.2.3", "a-bc", "", "line\nbreak",
+                "\uD83D\uDE00", "a\uD83D\uDE00.json"));
+        Random random = new Random(42);
+        String alphabet = "abxyz-./019 \nGETPUT";
+        for (int i = 0; i < 2000; i++) {
+            StringBuilder sb = new StringBuilder();
+            for (int j = random.nextInt(8); j > 0; j--) {
+                sb.append(alphabet.charAt(random.nextInt(alphabet.length())));
+            }
+            inputs.add(sb.toString());
+        }
+        for (String input : inputs) {
+            Assert.assertEquals(input, chain.lift().apply(input), compiled.lift().apply(input));
+        }
+        Assert.assertEquals("0:17", compiled.apply("GET /api/v2/orders/17"));
+        Assert.assertEquals("3:a", compiled.apply("aa"));
+        Assert.assertEquals(Optional.empty(), compiled.lift().apply("line\nbreak"));
+        Assert.assertTrue(compiled.isCaching());
+    }
+
+    private static PartialFunction<String, Integer> indexed(String... patterns) {
+        PartialFunction<String, Integer> chain = PartialFunctions.empty();
+        for (int i = 0; i < patterns.length; i++) {
+            int index = i;
+            chain = chain.orElse(PartialFunctions.onRegex(patterns[i], m -> index));
+        }
+        return chain;
+    }
+
+    private static void assertSameMatches(PartialFunction<String, Integer> chain, PartialFunction<String, Integer> compiled, String... inputs) {
+        for (String input : inputs) {
+            Assert.assertEquals(input, chain.lift().apply(input), compiled.lift().apply(input));
+        }
+    }
+
+    @Test
+    public void testSurrogates() {
+        PartialFunction<String, Integer> chain = indexed("a.", "[a-z]{2}", ".+");
+        RegexAutomaton<Integer> compiled = (RegexAutomaton<Integer>) PartialFunctions.compile(chain);
+        Assert.assertEquals(0, compiled.fallbackCount());
+        // `.` matches a whole code point, which the automaton reading chars would see as two
+        assertSameMatches(chain, compiled, "a\uD83D\uDE00", "\uD83D\uDE00", "\uD83D", "a\uDE00", "ab", "a\u00E9");
+        Assert.assertEquals(Integer.valueOf(0), compiled.apply("a\uD83D\uDE00"));
+    }
+
+    @Test
+    public void testTrailingDollar() {
+        PartialFunction<String, Integer> chain = indexed("cost: \\d+\\$", "path\\\\$", "^x$");
+        RegexAutomaton<Integer> compiled = (RegexAutomaton<Integer>) PartialFunctions.compile(chain);
+        Assert.assertEquals(0, compiled.fallbackCount());
+        assertSameMatches(chain, compiled, "cost: 5$", "cost: 5", "path\\", "path", "path\\$", "x", "x$");
+        Assert.assertEquals(Integer.valueOf(0), compiled.apply("cost: 12$"));
+        Assert.assertEquals(Integer.valueOf(1), compiled.apply("path\\"));
+    }
+
+    @Test
+    public void testNamedGroups() {
+        PartialFunction<String, String> chain = PartialFunctions.onRegex("(?<year>\\d{4})-(?<month>\\d{2})", m -> m.group(2))
+                .orElse(PartialFunctions.onRegex("(?<=x)y|(?<name>[a-z]+)", m -> m.group(1)));
+        RegexAutomaton<String> compiled = (RegexAutomaton<String>) PartialFunctions.compile(chain);
+        // lookbehinds are not named groups, and keep their pattern out of the automaton
+        Assert.assertEquals(1, compiled.fallbackCount());
+        Assert.assertEquals("10", compiled.apply("2024-10"));
+        Assert.assertEquals("abc", compiled.apply("abc"));
+        Assert.assertFalse(compiled.isDefinedAt("2024-1"));
+    }
+
+    @Test
+    public void testMaxRepeat() {
+        PartialFunction<String, Integer> chain = indexed("a{100}", "a{0,100}b", "a{99,}c", "a{101}", "a{100,101}");
+        RegexAutomaton<Integer> compiled = (RegexAutomaton<Integer>) PartialFunctions.compile(chain);
+        // repeats bounded by more than 100 are kept out of the automaton
+        Assert.assertEquals(2, compiled.fallbackCount());
+        List<String> inputs = new ArrayList<>();
+        for (int n : new int[]{0, 1, 99, 100, 101, 102}) {
+            String as = String.join("", Collections.nCopies(n, "a"));
+            inputs.addAll(Arrays.asList(as, as + "b", as + "c"));
+        }
+        assertSameMatches(chain, compiled, inputs.toArray(new String[0]));
+    }
+
+    @Test
+    public void testCacheChurnIsBounded() {
+        // the DFA of the last pattern has 2^13 states, more than the cache holds
+        List<String> patterns = new ArrayList<>();
+        for (int i = 0; i < 20; i++) {
+            patterns.add("item" + i + "-[a-z]+\\d{2,4}");
+        }
+        patterns.add("(a|b)*a(a|b){12}");
+        PartialFunction<String, Integer> chain = indexed(patterns.toArray(new String[0]));
+        RegexAutomaton<Integer> compiled = (RegexAutomaton<Integer>) PartialFunctions.compile(chain);
+        Random random = new Random(7);
+        for (int i = 0; i < 20000; i++) {
+            char[] chars = new char[20];
+            for (int j = 0; j < chars.length; j++) {
+                chars[j] = random.nextBoolean() ? 'a' : 'b';
+            }
+            String input = new String(chars);
+            Assert.assertEquals(input, chain.lift().apply(input), compiled.lift().apply(input));
+            Assert.assertTrue(compiled.cachedStateCount() <= RegexAutomaton.MAX_CACHED_STATES + 1);
+        }
+        Assert.assertFalse(compiled.isCaching());
+
+        // ordinary inputs get cached again once the burst is over
+        int chars = 0;
+        for (int i = 0; chars < 2 * RegexAutomaton.MIN_CHARS_PER_STATE * RegexAutomaton.MAX_CACHED_STATES; i++) {
+            String input = "item" + i % 20 + "-abc" + (100 + i % 900);
+            chars += input.length();
+            Assert.assertEquals(Integer.valueOf(i % 20), compiled.apply(input));
+        }
+        Assert.assertTrue(compiled.isCaching());
+        int cached = compiled.cachedStateCount();
+        for (int i = 0; i < 1000; i++) {
+            compiled.apply("item" + i % 20 + "-abc" + (100 + i % 900));
+        }
+        Assert.assertTrue(compiled.isCaching());
+        Assert.assertEquals(cached, compiled.cachedStateCount());
+    }
+
+    @Test
+    public void testRunsAreCompiledSeparately() {
+        PartialFunction<String, Integer> chain = PartialFunctions.onRegex("[0-9]+", m -> 1)
+                .orElse(PartialFunctions.onRegex("[0-9a-f]+", m -> 2))
+                .orElseOf(s -> s.length() > 3, s -> 3)
+                .orElse(PartialFunctions.onRegex("[a-z]+", m -> 4))
+                .orElse(PartialFunctions.onRegex("\\w+", m -> 5))
+                .end();
+        PartialFunction<String, Integer> compiled = PartialFunctions.compile(chain);
+        for (String input : Arrays.asList("42", "beef", "zz", "zzzz", "Z_", "!")) {
+            Assert.assertEquals(input, chain.lift().apply(input), compiled.lift().apply(input));
+        }
+    }
+}
@@ -0,0 +1,155 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.function.PartialFunction;
+import cc.domovoi.lambda.function.PartialFunctions;
+import cc.domovoi.lambda.function.SwappablePartialFunction;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+public class SwappablePartialFunctionTest {
+
+    @Test
+    public void testEditsProduceVersions() {
+        SwappablePartialFunction<Integer, String> router = new SwappablePartialFunction<>();
+        AtomicLong lastVersion = new AtomicLong();
+        router.addListener((previous, current) -> lastVersion.set(current.version()));
+
+        router.add("small", PartialFunctions.of((Integer i) -> i < 10, i -> "small"));
+        router.add("any", PartialFunctions.of((Integer i) -> true, i -> "any"));
+        Assert.assertEquals("small", router.apply(1));
+        Assert.assertEquals("any", router.apply(100));
+
+        SwappablePartialFunction.Snapshot<Integer, String> before = router.snapshot();
+        router.replace("small", PartialFunctions.of((Integer i) -> i < 10, i -> "tiny"));
+        Assert.assertEquals("tiny", router.apply(1));
+        Assert.assertEquals("small", before.apply(1));
+
+        router.remove("small");
+        Assert.assertEquals("any", router.apply(1));
+        Assert.assertEquals(Arrays.asList("any"), router.snapshot().ids());
+        Assert.assertEquals(4L, router.version());
+        Assert.assertEquals(4L, lastVersion.get());
+
+        router.remove("missing");
+        Assert.assertEquals(4L, router.version());
+    }
+
+    @Test
+    public void testCasesAreChunked() {
+        SwappablePartialFunction<Integer, Integer> router = new SwappablePartialFunction<>();
+        Map<Integer, PartialFunction<Integer, Integer>> cases = new LinkedHashMap<>();
+        for (int n = 0; n < 100; n++) {
+            int k = n;
+            cases.put(k, PartialFunctions.of((Integer i) -> i == k, i -> k * 2));
+        }
+        router.addAll(cases);
+        Assert.assertEquals(1L, router.version());
+        Assert.assertEquals(100, router.snapshot().size());
+        Assert.assertEquals(4, router.snapshot().chunkCount());
+        Assert.assertEquals(Integer.valueOf(198), router.apply(99));
+        Assert.assertFalse(router.isDefinedAt(100));
+
+        router.remove(99);
+        Assert.assertFalse(router.isDefinedAt(99));
+        Assert.assertEquals(Integer.valueOf(196), router.apply(98));
+    }
+
+    @Test
+    public void testSmallChunksAreMerged() {
+        SwappablePartialFunction<Integer, Integer> router = new SwappablePartialFunction<>();
+        Map<Integer, PartialFunction<Integer, Integer>> cases = new LinkedHashMap<>();
+        for (int n = 0; n < 40; n++) {
+            int k = n;
+            cases.put(k, PartialFunctions.of((Integer i) -> i % 40 == k, i -> k));
+        }
+        router.addAll(cases);
+        Assert.assertEquals(2, router.snapshot().chunkCount());
+        for (int n = 0; n < 16; n++) {
+            router.remove(n);
+        }
+        Assert.assertEquals(2, router.snapshot().chunkCount());
+        router.remove(16);
+        Assert.assertEquals(1, router.snapshot().chunkCount());
+        Assert.assertEquals(23, router.snapshot().size());
+        Assert.assertEquals(Arrays.asList(17, 18, 19), router.snapshot().ids().subList(0, 3));
+        Assert.assertEquals(Integer.valueOf(39), router.apply(79));
+        Assert.assertFalse(router.isDefinedAt(16));
+        for (int n = 17; n < 40; n++) {
+            router.remove(n);
+        }
+        Assert.assertEquals(0, router.snapshot().chunkCount());
+        Assert.assertFalse(router.isDefinedAt(39));
+    }
+
+    @Test
+    public void testFailingListener() {
+        SwappablePartialFunction<Integer, String> router = new SwappablePartialFunction<>();
+        AtomicLong notified = new AtomicLong();
+        router.addListener((previous, current) -> {
+            throw new IllegalStateException("first");
+        });
+        router.addListener((previous, current) -> notified.incrementAndGet());
+        router.addListener((previous, current) -> {
+            throw new IllegalStateException("third");
+        });
+        Thread thread = Thread.currentThread();
+        Thread.UncaughtExceptionHandler handler = thread.getUncaughtExceptionHandler();
+        List<Throwable> failures = new ArrayList<>();
+        thread.setUncaughtExceptionHandler((t, e) -> failures.add(e));
+        try {
+            router.add("any", PartialFunctions.of((Integer i) -> true, i -> "any"));
+        } finally {
+            thread.setUncaughtExceptionHandler(handler);
+        }
+        Assert.assertEquals(1L, router.version());
+        Assert.assertEquals(1L, notified.get());
+        Assert.assertEquals(1, failures.size());
+        Assert.assertEquals("first", failures.get(0).getMessage());
+        Assert.assertEquals("third", failures.get(0).getSuppressed()[0].getMessage());
+    }
+
+    @Test
+    public void testListenersSeeIncreasingVersions() throws InterruptedException {
+        SwappablePartialFunction<Integer, String> router = new SwappablePartialFunction<>();
+        List<Long> versions = new ArrayList<>();
+        router.addListener((previous, current) -> versions.add(current.version()));
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            int offset = t * 1000;
+            threads[t] = new Thread(() -> {
+                for (int n = 0; n < 200; n++) {
+                    router.add(offset + n, PartialFunctions.of((Integer i) -> i == 0, i -> "zero"));
+                }
+            });
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        Assert.assertEquals(800L, router.version());
+        Assert.assertEquals(Long.valueOf(800L), versions.get(versions.size() - 1));
+        for (int i = 1; i < versions.size(); i++) {
+            Assert.assertTrue(versions.get(i - 1) < versions.get(i));
+        }
+    }
+
+    @Test(expected = NullPointerException.class)
+    public void testNullCase() {
+        SwappablePartialFunction<Integer, String> router = new SwappablePartialFunction<>();
+        router.add("a", null);
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testDuplicateId() {
+        SwappablePartialFunction<Integer, String> router = new SwappablePartialFunction<>();
+        router.add("a", PartialFunctions.of((Integer i) -> true, i -> "a"));
+        router.add("a", PartialFunctions.of((Integer i) -> true, i -> "b"));
+    }
+}
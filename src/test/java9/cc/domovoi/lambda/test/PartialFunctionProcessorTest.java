@@ -0,0 +1,292 @@
+package cc.domovoi.lambda.test;
+
+import cc.domovoi.lambda.function.PartialFunction;
+import cc.domovoi.lambda.function.PartialFunctionProcessor;
+import cc.domovoi.lambda.function.PartialFunctions;
+import org.junit.Assert;
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Flow;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+public class PartialFunctionProcessorTest {
+
+    private final PartialFunction<Integer, String> even = PartialFunctions.of((Integer i) -> i % 2 == 0, i -> "e" + i);
+
+    /**
+     * An upstream subscription driven by the test, recording the demand of the processor.
+     */
+    private static final class Upstream implements Flow.Subscription {
+
+        long requested;
+
+        boolean cancelled;
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+    }
+
+    /**
+     * A subscriber recording every signal, which requests `initial` elements from within `onSubscribe`.
+     */
+    private static final class Recorder<T> implements Flow.Subscriber<T> {
+
+        final List<String> events = new ArrayList<>();
+
+        final List<T> items = new ArrayList<>();
+
+        final long initial;
+
+        Flow.Subscription subscription;
+
+        Throwable error;
+
+        Recorder(long initial) {
+            this.initial = initial;
+        }
+
+        @Override
+        public void onSubscribe(Flow.Subscription subscription) {
+            this.subscription = subscription;
+            events.add("subscribe");
+            if (initial > 0) {
+                subscription.request(initial);
+            }
+        }
+
+        @Override
+        public void onNext(T item) {
+            events.add("next");
+            items.add(item);
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            events.add("error");
+            error = throwable;
+        }
+
+        @Override
+        public void onComplete() {
+            events.add("complete");
+        }
+    }
+
+    private static void send(PartialFunctionProcessor<Integer, ?> processor, int from, int to) {
+        IntStream.range(from, to).forEach(processor::onNext);
+    }
+
+    @Test
+    public void testRouting() {
+        Recorder<Integer> unmatched = new Recorder<>(Long.MAX_VALUE);
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, unmatched, 16);
+        Recorder<String> matched = new Recorder<>(Long.MAX_VALUE);
+        processor.subscribe(matched);
+        processor.onSubscribe(new Upstream());
+        send(processor, 0, 10);
+        processor.onComplete();
+
+        Assert.assertEquals(Arrays.asList("e0", "e2", "e4", "e6", "e8"), matched.items);
+        Assert.assertEquals(Arrays.asList(1, 3, 5, 7, 9), unmatched.items);
+        Assert.assertEquals("complete", matched.events.get(matched.events.size() - 1));
+        Assert.assertEquals("complete", unmatched.events.get(unmatched.events.size() - 1));
+        PartialFunctionProcessor.Metrics metrics = processor.metrics();
+        Assert.assertEquals(10L, metrics.received());
+        Assert.assertEquals(5L, metrics.matched());
+        Assert.assertEquals(5L, metrics.unmatched());
+        Assert.assertEquals(0L, metrics.dropped());
+    }
+
+    @Test
+    public void testUnmatchedAreDroppedWithoutSubscriber() {
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, null, 16);
+        Recorder<String> matched = new Recorder<>(Long.MAX_VALUE);
+        processor.subscribe(matched);
+        processor.onSubscribe(new Upstream());
+        send(processor, 0, 4);
+        Assert.assertEquals(Arrays.asList("e0", "e2"), matched.items);
+        Assert.assertEquals(2L, processor.metrics().dropped());
+    }
+
+    @Test
+    public void testBackpressure() {
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, null, 4);
+        Recorder<String> matched = new Recorder<>(1);
+        processor.subscribe(matched);
+        Upstream upstream = new Upstream();
+        processor.onSubscribe(upstream);
+        Assert.assertEquals(4L, upstream.requested);
+
+        processor.onNext(0);
+        processor.onNext(2);
+        processor.onNext(4);
+        processor.onNext(6);
+        Assert.assertEquals(Arrays.asList("e0"), matched.items);
+        Assert.assertEquals(3, processor.metrics().queueDepth());
+        Assert.assertEquals(4L, upstream.requested);
+
+        // the third element consumed from the buffer replenishes three quarters of it
+        matched.subscription.request(2);
+        Assert.assertEquals(Arrays.asList("e0", "e2", "e4"), matched.items);
+        Assert.assertEquals(7L, upstream.requested);
+        Assert.assertEquals(2L, processor.metrics().requests());
+
+        processor.onComplete();
+        Assert.assertFalse(matched.events.contains("complete"));
+        matched.subscription.request(1);
+        Assert.assertEquals(Arrays.asList("e0", "e2", "e4", "e6"), matched.items);
+        Assert.assertEquals("complete", matched.events.get(matched.events.size() - 1));
+    }
+
+    @Test
+    public void testBufferOverflow() {
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, null, 2);
+        Recorder<String> matched = new Recorder<>(0);
+        processor.subscribe(matched);
+        Upstream upstream = new Upstream();
+        processor.onSubscribe(upstream);
+        send(processor, 0, 4);
+        Assert.assertTrue(upstream.cancelled);
+        Assert.assertTrue(matched.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testCancellation() {
+        Recorder<Integer> unmatched = new Recorder<>(Long.MAX_VALUE);
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, unmatched, 16);
+        Recorder<String> matched = new Recorder<>(Long.MAX_VALUE);
+        processor.subscribe(matched);
+        Upstream upstream = new Upstream();
+        processor.onSubscribe(upstream);
+        send(processor, 0, 4);
+
+        // the unmatched subscriber keeps the stage alive, the results are dropped
+        matched.subscription.cancel();
+        send(processor, 4, 8);
+        Assert.assertFalse(upstream.cancelled);
+        Assert.assertEquals(Arrays.asList("e0", "e2"), matched.items);
+        Assert.assertEquals(Arrays.asList(1, 3, 5, 7), unmatched.items);
+        Assert.assertEquals(2L, processor.metrics().dropped());
+
+        unmatched.subscription.cancel();
+        Assert.assertTrue(upstream.cancelled);
+        processor.onComplete();
+        Assert.assertFalse(matched.events.contains("complete"));
+        Assert.assertFalse(unmatched.events.contains("complete"));
+    }
+
+    @Test
+    public void testErrorPropagation() {
+        Recorder<Integer> unmatched = new Recorder<>(Long.MAX_VALUE);
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, unmatched, 16);
+        Recorder<String> matched = new Recorder<>(Long.MAX_VALUE);
+        processor.subscribe(matched);
+        processor.onSubscribe(new Upstream());
+        send(processor, 0, 3);
+        IllegalStateException e = new IllegalStateException("upstream");
+        processor.onError(e);
+        Assert.assertSame(e, matched.error);
+        Assert.assertSame(e, unmatched.error);
+        Assert.assertEquals(Arrays.asList("subscribe", "next", "next", "error"), matched.events);
+
+        // a failing function cancels upstream and errors the subscribers
+        PartialFunctionProcessor<Integer, String> failing = new PartialFunctionProcessor<>(
+                PartialFunctions.of((Integer i) -> true, i -> {
+                    throw new ArithmeticException();
+                }));
+        Recorder<String> failed = new Recorder<>(Long.MAX_VALUE);
+        failing.subscribe(failed);
+        Upstream upstream = new Upstream();
+        failing.onSubscribe(upstream);
+        failing.onNext(1);
+        Assert.assertTrue(upstream.cancelled);
+        Assert.assertTrue(failed.error instanceof ArithmeticException);
+        Assert.assertEquals(Arrays.asList("subscribe", "error"), failed.events);
+    }
+
+    @Test
+    public void testErrorSkipsCancelledSubscriber() {
+        Recorder<Integer> unmatched = new Recorder<>(Long.MAX_VALUE);
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, unmatched, 16);
+        Recorder<String> matched = new Recorder<>(Long.MAX_VALUE);
+        processor.subscribe(matched);
+        processor.onSubscribe(new Upstream());
+        matched.subscription.cancel();
+        processor.onError(new IllegalStateException());
+        Assert.assertEquals(Arrays.asList("subscribe"), matched.events);
+        Assert.assertEquals(Arrays.asList("subscribe", "error"), unmatched.events);
+    }
+
+    @Test
+    public void testInvalidRequestErrorsOnlyItsSubscriber() {
+        Recorder<Integer> unmatched = new Recorder<>(Long.MAX_VALUE);
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, unmatched, 16);
+        Recorder<String> matched = new Recorder<>(Long.MAX_VALUE);
+        processor.subscribe(matched);
+        Upstream upstream = new Upstream();
+        processor.onSubscribe(upstream);
+        send(processor, 0, 2);
+        unmatched.subscription.request(0);
+        Assert.assertTrue(unmatched.error instanceof IllegalArgumentException);
+        unmatched.subscription.request(-1);
+        Assert.assertEquals(1L, unmatched.events.stream().filter("error"::equals).count());
+
+        send(processor, 2, 6);
+        processor.onComplete();
+        Assert.assertFalse(upstream.cancelled);
+        Assert.assertNull(matched.error);
+        Assert.assertEquals(Arrays.asList("e0", "e2", "e4"), matched.items);
+        Assert.assertEquals("complete", matched.events.get(matched.events.size() - 1));
+        Assert.assertEquals(Arrays.asList(1), unmatched.items);
+        Assert.assertEquals("error", unmatched.events.get(unmatched.events.size() - 1));
+    }
+
+    @Test
+    public void testOnSubscribeComesFirst() {
+        PartialFunctionProcessor<Integer, String> completed = new PartialFunctionProcessor<>(even, null, 16);
+        completed.onSubscribe(new Upstream());
+        completed.onNext(2);
+        completed.onComplete();
+        Recorder<String> late = new Recorder<>(Long.MAX_VALUE);
+        completed.subscribe(late);
+        Assert.assertEquals(Arrays.asList("subscribe", "next", "complete"), late.events);
+
+        PartialFunctionProcessor<Integer, String> failed = new PartialFunctionProcessor<>(even, null, 16);
+        failed.onSubscribe(new Upstream());
+        failed.onError(new IllegalStateException());
+        Recorder<String> idle = new Recorder<>(0);
+        failed.subscribe(idle);
+        Assert.assertEquals(Arrays.asList("subscribe", "error"), idle.events);
+
+        Recorder<String> second = new Recorder<>(0);
+        failed.subscribe(second);
+        Assert.assertEquals(Arrays.asList("subscribe", "error"), second.events);
+        Assert.assertTrue(second.error instanceof IllegalStateException);
+    }
+
+    @Test
+    public void testRequestFromOnSubscribe() {
+        PartialFunctionProcessor<Integer, String> processor = new PartialFunctionProcessor<>(even, null, 16);
+        processor.onSubscribe(new Upstream());
+        send(processor, 0, 6);
+        Recorder<String> matched = new Recorder<>(2);
+        processor.subscribe(matched);
+        Assert.assertEquals(Arrays.asList("e0", "e2"), matched.items);
+        Assert.assertEquals("subscribe", matched.events.get(0));
+        matched.subscription.request(5);
+        processor.onComplete();
+        Assert.assertEquals(IntStream.range(0, 3).mapToObj(i -> "e" + i * 2).collect(Collectors.toList()), matched.items);
+        Assert.assertEquals("complete", matched.events.get(matched.events.size() - 1));
+    }
+}